@@ -4,7 +4,7 @@ package com.bleumuse.lunar;
  * Displays the nesting of the syntax tree of a fully derived
  * Expression in explicit form. 
  */
-class AstPrinter implements Expr.Visitor<String> {
+class AstPrinter implements Visitor<String> {
     public String print(Expr expr) {
         return expr.accept(this);
     }
@@ -15,7 +15,7 @@ class AstPrinter implements Expr.Visitor<String> {
      */
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
-        return parenthesize(expr.operator.lexeme,
+        return parenthesize(expr.operator.lexeme(),
                 expr.left, expr.right);
     }
 
@@ -44,7 +44,15 @@ class AstPrinter implements Expr.Visitor<String> {
      */
     @Override
     public String visitUnaryExpr(Expr.Unary expr) {
-        return parenthesize(expr.operator.lexeme, expr.right);
+        return parenthesize(expr.operator.lexeme(), expr.right);
+    }
+
+    /**
+     * Implements the visiting method for the Variable type.
+     */
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return expr.name.lexeme();
     }
 
     private String parenthesize(String name, Expr... exprs) {
@@ -0,0 +1,558 @@
+package com.bleumuse.lunar;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.bleumuse.lunar.TokenType.*;
+
+/**
+ * Evaluates a single expression over many rows of input at once. The
+ * expression is compiled once into a tree of kernels, each of which computes
+ * its node for a whole batch of rows in one tight loop, instead of walking
+ * the syntax tree again for every row.
+ *
+ * Input columns hold numbers and are referred to by Variable expressions
+ * through the names given at compile time. The result is a column of numbers
+ * or of booleans depending on the expression. "and" and "or" only evaluate
+ * their right operand on the rows whose result is not already decided by the
+ * left one, passing those rows down as a selection vector.
+ *
+ * Rows are processed in batches of BATCH rows. Every call to evaluate
+ * allocates one scratch buffer of BATCH entries per kernel and reuses it for
+ * all of its batches, so the memory an evaluation touches does not grow with
+ * the number of rows. A compiled BatchEvaluator holds no mutable state and
+ * may be used from several threads at once.
+ */
+public final class BatchEvaluator {
+    // the number of rows every kernel processes at a time
+    static final int BATCH = 1024;
+
+    private final List<String> names;
+    private final Kernel root;
+    private final int numberSlots;
+    private final int booleanSlots;
+    private final int selectionSlots;
+
+    private BatchEvaluator(List<String> names, Kernel root, Compiler compiler) {
+        this.names = names;
+        this.root = root;
+        this.numberSlots = compiler.numberSlots;
+        this.booleanSlots = compiler.booleanSlots;
+        this.selectionSlots = compiler.selectionSlots;
+    }
+
+    /**
+     * Compiles the expression of the given script for batch evaluation.
+     *
+     * @param script  The script to evaluate on every row, which must have
+     *                compiled without errors
+     * @param columns The names of the input columns, in the order they will
+     *                be passed to evaluate
+     * @return The compiled expression, which may be evaluated any number of times
+     * @throws IllegalArgumentException if the script had compile errors, refers
+     *         to an unknown column or uses a value or operator that is not
+     *         supported on columns
+     */
+    public static BatchEvaluator compile(Script script, String... columns) {
+        if (script.hadError())
+            throw new IllegalArgumentException("Script has compile errors.");
+
+        return compile(script.expression(), columns);
+    }
+
+    /**
+     * Compiles the given expression for batch evaluation.
+     *
+     * @param expr    The expression to evaluate on every row
+     * @param columns The names of the input columns, in the order they will
+     *                be passed to evaluate
+     * @return The compiled expression, which may be evaluated any number of times
+     * @throws IllegalArgumentException if the expression refers to an unknown
+     *         column or uses a value or operator that is not supported on columns
+     */
+    static BatchEvaluator compile(Expr expr, String... columns) {
+        List<String> names = List.of(columns);
+        Compiler compiler = new Compiler(names);
+        return new BatchEvaluator(names, expr.accept(compiler), compiler);
+    }
+
+    /**
+     * @return true if the expression yields booleans, false if it yields numbers
+     */
+    public boolean isBoolean() {
+        return root.bool;
+    }
+
+    /**
+     * Evaluates a numeric expression over the first rows of the given columns.
+     *
+     * @param rows    The number of rows to evaluate
+     * @param columns One array per input column, at least rows long
+     * @return A new array holding the result for each row
+     */
+    public double[] evaluateNumbers(int rows, double[]... columns) {
+        check(rows, columns);
+        if (root.bool)
+            throw new IllegalStateException("Expression yields booleans.");
+
+        double[] result = new double[rows];
+        Frame frame = new Frame(columns);
+        for (int base = 0; base < rows; base += BATCH) {
+            int count = Math.min(BATCH, rows - base);
+            frame.base = base;
+            System.arraycopy(root.numbers(frame, null, count), 0, result, base, count);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates a boolean expression over the first rows of the given columns.
+     *
+     * @param rows    The number of rows to evaluate
+     * @param columns One array per input column, at least rows long
+     * @return A new array holding the result for each row
+     */
+    public boolean[] evaluateBooleans(int rows, double[]... columns) {
+        check(rows, columns);
+        if (!root.bool)
+            throw new IllegalStateException("Expression yields numbers.");
+
+        boolean[] result = new boolean[rows];
+        Frame frame = new Frame(columns);
+        for (int base = 0; base < rows; base += BATCH) {
+            int count = Math.min(BATCH, rows - base);
+            frame.base = base;
+            System.arraycopy(root.booleans(frame, null, count), 0, result, base, count);
+        }
+        return result;
+    }
+
+    private void check(int rows, double[][] columns) {
+        if (rows < 0)
+            throw new IllegalArgumentException("Negative row count " + rows + ".");
+        if (columns.length != names.size())
+            throw new IllegalArgumentException(
+                    "Expected " + names.size() + " columns but got " + columns.length + ".");
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].length < rows)
+                throw new IllegalArgumentException(
+                        "Column '" + names.get(i) + "' has fewer than " + rows + " rows.");
+        }
+    }
+
+    /**
+     * The state of one evaluation: its input columns, the first row of the
+     * current batch, and the scratch buffers of the kernels, indexed by the
+     * slots the Compiler gave them.
+     */
+    private final class Frame {
+        final double[][] columns;
+        int base;               // the input row that batch row 0 stands for
+        final double[][] numbers;
+        final boolean[][] booleans;
+        final int[][] selections;
+
+        Frame(double[][] columns) {
+            this.columns = columns;
+            this.numbers = new double[numberSlots][BATCH];
+            this.booleans = new boolean[booleanSlots][BATCH];
+            this.selections = new int[selectionSlots][BATCH];
+        }
+    }
+
+    /**
+     * The compiled form of one node. A kernel evaluates the batch rows listed
+     * in sel[0..count), or the rows [0, count) when sel is null, and returns
+     * an array indexed by batch row in which only those rows are meaningful.
+     * The returned array belongs to the kernel, callers only read it.
+     */
+    private abstract static class Kernel {
+        final boolean bool;     // true if the kernel yields booleans, false for numbers
+
+        Kernel(boolean bool) {
+            this.bool = bool;
+        }
+
+        double[] numbers(Frame frame, int[] sel, int count) {
+            throw new IllegalStateException("Kernel yields booleans.");
+        }
+
+        boolean[] booleans(Frame frame, int[] sel, int count) {
+            throw new IllegalStateException("Kernel yields numbers.");
+        }
+    }
+
+    /**
+     * Translates every node of the syntax tree into its kernel, checking the
+     * operand types once here rather than on every row, and hands out the
+     * scratch slot of each kernel.
+     */
+    private static class Compiler implements Visitor<Kernel> {
+        private final List<String> names;
+        int numberSlots;
+        int booleanSlots;
+        int selectionSlots;
+
+        Compiler(List<String> names) {
+            this.names = names;
+        }
+
+        @Override
+        public Kernel visitBinaryExpr(Expr.Binary expr) {
+            Kernel left = expr.left.accept(this);
+            Kernel right = expr.right.accept(this);
+            TokenType op = expr.operator.type;
+
+            switch (op) {
+                case AND:
+                case OR:
+                    requireBooleans(expr.operator, left, right);
+                    return logical(op == AND, left, right,
+                            booleanSlots++, selectionSlots++);
+                case PLUS:
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    requireNumbers(expr.operator, left, right);
+                    return arithmetic(op, left, right, numberSlots++);
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    requireNumbers(expr.operator, left, right);
+                    return comparison(op, left, right, booleanSlots++);
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    // values of different types are never equal
+                    if (left.bool != right.bool) return constant(op == BANG_EQUAL);
+                    return left.bool ? booleanEquality(op, left, right, booleanSlots++)
+                                     : comparison(op, left, right, booleanSlots++);
+                default:
+                    throw unsupported(expr.operator);
+            }
+        }
+
+        @Override
+        public Kernel visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Kernel visitLiteralExpr(Expr.Literal expr) {
+            if (expr.value instanceof Double) return constant((double) expr.value);
+            if (expr.value instanceof Boolean) return constant((boolean) expr.value);
+            throw new IllegalArgumentException(
+                    "Only number and boolean literals can be evaluated on columns.");
+        }
+
+        @Override
+        public Kernel visitUnaryExpr(Expr.Unary expr) {
+            Kernel right = expr.right.accept(this);
+
+            switch (expr.operator.type) {
+                case MINUS:
+                    requireNumbers(expr.operator, right, right);
+                    return negate(right, numberSlots++);
+                case BANG:
+                    // a number is always truthy, so its negation is false
+                    return right.bool ? not(right, booleanSlots++) : constant(false);
+                default:
+                    throw unsupported(expr.operator);
+            }
+        }
+
+        @Override
+        public Kernel visitVariableExpr(Expr.Variable expr) {
+            int index = names.indexOf(expr.name.lexeme());
+            if (index < 0)
+                throw new IllegalArgumentException(
+                        "Undefined column '" + expr.name.lexeme() + "'.");
+
+            return variable(index, numberSlots++);
+        }
+
+        private static void requireNumbers(Token operator, Kernel left, Kernel right) {
+            if (left.bool || right.bool)
+                throw new IllegalArgumentException(
+                        "Operands of '" + operator.lexeme() + "' must be numbers.");
+        }
+
+        private static void requireBooleans(Token operator, Kernel left, Kernel right) {
+            if (!left.bool || !right.bool)
+                throw new IllegalArgumentException(
+                        "Operands of '" + operator.lexeme() + "' must be booleans.");
+        }
+
+        private static IllegalArgumentException unsupported(Token operator) {
+            return new IllegalArgumentException(
+                    "Operator '" + operator.lexeme() + "' cannot be evaluated on columns.");
+        }
+    }
+
+    // a constant is filled once at compile time, every batch reads it as it is
+
+    private static Kernel constant(double value) {
+        double[] out = new double[BATCH];
+        Arrays.fill(out, value);
+        return new Kernel(false) {
+            @Override
+            double[] numbers(Frame frame, int[] sel, int count) {
+                return out;
+            }
+        };
+    }
+
+    private static Kernel constant(boolean value) {
+        boolean[] out = new boolean[BATCH];
+        Arrays.fill(out, value);
+        return new Kernel(true) {
+            @Override
+            boolean[] booleans(Frame frame, int[] sel, int count) {
+                return out;
+            }
+        };
+    }
+
+    private static Kernel variable(int index, int slot) {
+        return new Kernel(false) {
+            @Override
+            double[] numbers(Frame frame, int[] sel, int count) {
+                double[] column = frame.columns[index];
+                double[] out = frame.numbers[slot];
+                int base = frame.base;
+                if (sel == null) {
+                    System.arraycopy(column, base, out, 0, count);
+                } else {
+                    for (int j = 0; j < count; j++) {
+                        int i = sel[j];
+                        out[i] = column[base + i];
+                    }
+                }
+                return out;
+            }
+        };
+    }
+
+    // the kernels below have a plain loop for a dense batch and a gather
+    // loop for a selection, rather than looking sel up on every row
+
+    private static Kernel negate(Kernel right, int slot) {
+        return new Kernel(false) {
+            @Override
+            double[] numbers(Frame frame, int[] sel, int count) {
+                double[] r = right.numbers(frame, sel, count);
+                double[] out = frame.numbers[slot];
+                if (sel == null) {
+                    for (int i = 0; i < count; i++) out[i] = -r[i];
+                } else {
+                    for (int j = 0; j < count; j++) {
+                        int i = sel[j];
+                        out[i] = -r[i];
+                    }
+                }
+                return out;
+            }
+        };
+    }
+
+    private static Kernel not(Kernel right, int slot) {
+        return new Kernel(true) {
+            @Override
+            boolean[] booleans(Frame frame, int[] sel, int count) {
+                boolean[] r = right.booleans(frame, sel, count);
+                boolean[] out = frame.booleans[slot];
+                if (sel == null) {
+                    for (int i = 0; i < count; i++) out[i] = !r[i];
+                } else {
+                    for (int j = 0; j < count; j++) {
+                        int i = sel[j];
+                        out[i] = !r[i];
+                    }
+                }
+                return out;
+            }
+        };
+    }
+
+    private static Kernel arithmetic(TokenType op, Kernel left, Kernel right, int slot) {
+        return new Kernel(false) {
+            @Override
+            double[] numbers(Frame frame, int[] sel, int count) {
+                double[] l = left.numbers(frame, sel, count);
+                double[] r = right.numbers(frame, sel, count);
+                double[] out = frame.numbers[slot];
+                switch (op) {
+                    case PLUS:
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++) out[i] = l[i] + r[i];
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = l[i] + r[i];
+                            }
+                        }
+                        break;
+                    case MINUS:
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++) out[i] = l[i] - r[i];
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = l[i] - r[i];
+                            }
+                        }
+                        break;
+                    case STAR:
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++) out[i] = l[i] * r[i];
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = l[i] * r[i];
+                            }
+                        }
+                        break;
+                    default: // SLASH
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++) out[i] = l[i] / r[i];
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = l[i] / r[i];
+                            }
+                        }
+                        break;
+                }
+                return out;
+            }
+        };
+    }
+
+    /**
+     * Builds the kernel of a comparison between numbers. Equality compares
+     * the bits of the values, as Double.equals() does in the Interpreter:
+     * NaN equals itself and 0.0 differs from -0.0.
+     */
+    private static Kernel comparison(TokenType op, Kernel left, Kernel right, int slot) {
+        return new Kernel(true) {
+            @Override
+            boolean[] booleans(Frame frame, int[] sel, int count) {
+                double[] l = left.numbers(frame, sel, count);
+                double[] r = right.numbers(frame, sel, count);
+                boolean[] out = frame.booleans[slot];
+                switch (op) {
+                    case GREATER:
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++) out[i] = l[i] > r[i];
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = l[i] > r[i];
+                            }
+                        }
+                        break;
+                    case GREATER_EQUAL:
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++) out[i] = l[i] >= r[i];
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = l[i] >= r[i];
+                            }
+                        }
+                        break;
+                    case LESS:
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++) out[i] = l[i] < r[i];
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = l[i] < r[i];
+                            }
+                        }
+                        break;
+                    case LESS_EQUAL:
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++) out[i] = l[i] <= r[i];
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = l[i] <= r[i];
+                            }
+                        }
+                        break;
+                    default: // EQUAL_EQUAL, BANG_EQUAL
+                        boolean equal = op == EQUAL_EQUAL;
+                        if (sel == null) {
+                            for (int i = 0; i < count; i++)
+                                out[i] = (Double.doubleToLongBits(l[i])
+                                        == Double.doubleToLongBits(r[i])) == equal;
+                        } else {
+                            for (int j = 0; j < count; j++) {
+                                int i = sel[j];
+                                out[i] = (Double.doubleToLongBits(l[i])
+                                        == Double.doubleToLongBits(r[i])) == equal;
+                            }
+                        }
+                        break;
+                }
+                return out;
+            }
+        };
+    }
+
+    private static Kernel booleanEquality(TokenType op, Kernel left, Kernel right, int slot) {
+        boolean equal = op == EQUAL_EQUAL;
+        return new Kernel(true) {
+            @Override
+            boolean[] booleans(Frame frame, int[] sel, int count) {
+                boolean[] l = left.booleans(frame, sel, count);
+                boolean[] r = right.booleans(frame, sel, count);
+                boolean[] out = frame.booleans[slot];
+                if (sel == null) {
+                    for (int i = 0; i < count; i++) out[i] = (l[i] == r[i]) == equal;
+                } else {
+                    for (int j = 0; j < count; j++) {
+                        int i = sel[j];
+                        out[i] = (l[i] == r[i]) == equal;
+                    }
+                }
+                return out;
+            }
+        };
+    }
+
+    /**
+     * Builds the kernel of "and" (isAnd true) or "or". The right operand only
+     * sees the rows where the left one did not decide the result: true rows
+     * for "and", false rows for "or".
+     */
+    private static Kernel logical(boolean isAnd, Kernel left, Kernel right,
+            int slot, int selectionSlot) {
+        return new Kernel(true) {
+            @Override
+            boolean[] booleans(Frame frame, int[] sel, int count) {
+                boolean[] l = left.booleans(frame, sel, count);
+                boolean[] out = frame.booleans[slot];
+                int[] undecided = frame.selections[selectionSlot];
+
+                int remaining = 0;
+                for (int j = 0; j < count; j++) {
+                    int i = sel == null ? j : sel[j];
+                    if (l[i] == isAnd)
+                        undecided[remaining++] = i;
+                    else
+                        out[i] = l[i];
+                }
+                if (remaining == 0) return out;
+
+                boolean[] r = right.booleans(frame, undecided, remaining);
+                for (int j = 0; j < remaining; j++) {
+                    int i = undecided[j];
+                    out[i] = r[i];
+                }
+                return out;
+            }
+        };
+    }
+}
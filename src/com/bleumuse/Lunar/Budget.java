@@ -0,0 +1,63 @@
+package com.bleumuse.lunar;
+
+import java.time.Duration;
+
+
+/**
+ * The limits a single evaluation must stay within: the number of nodes it may
+ * visit, how deep the nesting of nodes may go, an estimate of the memory it may
+ * allocate, and the wall-clock time it may take. A Budget is immutable and may
+ * be shared by any number of evaluations, each of which tracks its own usage in
+ * an ExecutionContext.
+ * 
+ * The interpreter recurses once per level of nesting, three stack frames
+ * deep, so the depth cannot be left unlimited: it is at most MAX_DEPTH, which
+ * a thread stack of 512 KB or more always has room for.
+ */
+public final class Budget {
+    /**
+     * The deepest nesting a budget may allow, and the tallest syntax tree
+     * compile() accepts. Evaluating that deep is safe on a thread stack of
+     * 512 KB or more; the JVM default is 1 MB.
+     */
+    public static final int MAX_DEPTH = 512;
+
+    // a budget that never runs out but for the depth, for trusted scripts
+    public static final Budget UNLIMITED =
+            new Budget(Long.MAX_VALUE, MAX_DEPTH, Long.MAX_VALUE, null, 0);
+
+    final long maxSteps;        // the number of nodes that may be visited
+    final int maxDepth;         // the deepest nesting of nodes that may be visited
+    final long maxAllocation;   // the estimated number of bytes that may be allocated
+    final Duration timeout;     // the wall-clock time allowed, null for no limit
+    final int yieldInterval;    // the number of steps between two yields, 0 to never yield
+
+
+    /**
+     * Constructs a new Budget with the given limits
+     * @param maxSteps The number of nodes that may be visited
+     * @param maxDepth The deepest nesting of nodes that may be visited, at
+     *                 most MAX_DEPTH
+     * @param maxAllocation The estimated number of bytes that may be allocated
+     * @param timeout The wall-clock time allowed, null for no limit
+     * @param yieldInterval The number of steps after which the evaluation lets
+     *                      other threads run, a power of two, or 0 for an
+     *                      evaluation that never yields its thread
+     * @throws IllegalArgumentException if maxDepth is above MAX_DEPTH or the
+     *         yield interval is not a power of two or 0
+     */
+    public Budget(long maxSteps, int maxDepth, long maxAllocation,
+            Duration timeout, int yieldInterval) {
+        if (maxDepth > MAX_DEPTH)
+            throw new IllegalArgumentException(
+                    "Depth " + maxDepth + " is above the maximum of " + MAX_DEPTH + ".");
+        if (yieldInterval != 0 && Integer.bitCount(yieldInterval) != 1)
+            throw new IllegalArgumentException("Yield interval must be a power of two or 0.");
+
+        this.maxSteps = maxSteps;
+        this.maxDepth = maxDepth;
+        this.maxAllocation = maxAllocation;
+        this.timeout = timeout;
+        this.yieldInterval = yieldInterval;
+    }
+}
@@ -0,0 +1,54 @@
+package com.bleumuse.lunar;
+
+
+/**
+ * Thrown when an evaluation runs out of one of the limits of its Budget. It is
+ * a structured result for the embedder rather than a script error: it says
+ * which limit ran out, what the limit was and how much had been used, and it
+ * is never reported through Lunar.error().
+ */
+public final class BudgetExceeded extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limits of a Budget.
+     */
+    public enum Kind {
+        STEPS,          // too many nodes visited
+        DEPTH,          // nodes nested too deeply
+        ALLOCATION,     // too much memory allocated
+        TIME            // the deadline has passed, counted in nanoseconds
+    }
+
+    final Kind kind;    // the limit that ran out
+    final long limit;   // the value of that limit
+    final long used;    // the usage that went over it
+
+
+    /**
+     * Constructs a new BudgetExceeded for the given limit. The stack trace is
+     * not filled in, it would only show the interpreter's own recursion.
+     * @param kind The limit that ran out
+     * @param limit The value of that limit
+     * @param used The usage that went over it
+     */
+    BudgetExceeded(Kind kind, long limit, long used) {
+        super("Budget exceeded: " + kind + " used " + used + " of " + limit + ".",
+                null, false, false);
+        this.kind = kind;
+        this.limit = limit;
+        this.used = used;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public long limit() {
+        return limit;
+    }
+
+    public long used() {
+        return used;
+    }
+}
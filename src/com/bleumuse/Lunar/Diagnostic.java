@@ -0,0 +1,62 @@
+package com.bleumuse.lunar;
+
+
+/**
+ * A single error found while processing a Lunar script, together with
+ * the source offset where it was raised. The offset is turned into a line
+ * and column through a LineMap only when the error is reported. Offsets are
+ * longs so that errors in files scanned by a FileScanner, which may be
+ * larger than 2 GB, can be located too.
+ */
+public final class Diagnostic {
+    final long offset;      // the index in the source where the error was raised
+    final String message;   // the description of the error
+
+
+    /**
+     * Constructs a new Diagnostic object with the given offset and message
+     * @param offset The index in the source where the error was raised
+     * @param message The description of the error
+     */
+    Diagnostic(long offset, String message) {
+        this.offset = offset;
+        this.message = message;
+    }
+
+
+    /**
+     * @return The index in the source where the error was raised
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * @return The description of the error
+     */
+    public String message() {
+        return message;
+    }
+
+    /**
+     * Returns a String representation of the Diagnostic object in the same
+     * format used when reporting errors to the console.
+     * For example, "[line 3, column 9] Error: Unterminated string.".
+     * @param lines The line map of the source the error was raised in,
+     *              which being held in memory is shorter than 2 GB
+     * @return A String representation of the Diagnostic object.
+     */
+    public String toString(LineMap lines) {
+        return "[line " + lines.line((int) offset) + ", column " +
+                lines.column((int) offset) + "] Error: " + message;
+    }
+
+    /**
+     * Returns a String representation of the Diagnostic object, locating
+     * the error by its raw source offset.
+     * @return A String representation of the Diagnostic object.
+     */
+    public String toString() {
+        return "[offset " + offset + "] Error: " + message;
+    }
+}
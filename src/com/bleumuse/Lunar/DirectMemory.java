@@ -0,0 +1,64 @@
+package com.bleumuse.lunar;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Releases direct and mapped buffers as soon as their owner is done with
+ * them, instead of when the garbage collector gets around to their cleaners.
+ * Direct memory counts against -XX:MaxDirectMemorySize whether or not the
+ * buffers holding it are still reachable, so waiting for a collection can
+ * fail an allocation with "OutOfMemoryError: Direct buffer memory" while
+ * the heap itself is nearly empty.
+ * 
+ * This goes through sun.misc.Unsafe.invokeCleaner() from the jdk.unsupported
+ * module, looked up reflectively. If it is not available the buffers are
+ * left to the garbage collector as before.
+ */
+final class DirectMemory {
+    private static final MethodHandle INVOKE_CLEANER = lookup();
+
+
+    private DirectMemory() {}
+
+
+    /**
+     * Frees the memory behind the given buffer, or unmaps it if it is a
+     * mapped buffer. The buffer, and every view of it, must never be read
+     * again: doing so may crash the virtual machine.
+     * 
+     * @param buffer A direct buffer returned by allocateDirect() or map(),
+     *               not a slice or duplicate of one
+     */
+    static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || !buffer.isDirect())
+            return;
+        try {
+            INVOKE_CLEANER.invokeExact(buffer);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle lookup() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner",
+                            MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
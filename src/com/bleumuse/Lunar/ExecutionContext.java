@@ -0,0 +1,119 @@
+package com.bleumuse.lunar;
+
+import com.bleumuse.lunar.BudgetExceeded.Kind;
+
+
+/**
+ * Tracks what one evaluation has used of its Budget. The interpreter calls
+ * enter() and exit() around every node it visits, which keeps the common case
+ * to a counter increment and a few comparisons. The clock is only read at a
+ * checkpoint, once every yield interval, and that is also where the evaluation
+ * yields its thread, so that many scripts sharing a few carrier threads (or
+ * virtual threads) each get their turn. A budget with neither a timeout nor a
+ * yield interval never reaches a checkpoint.
+ * 
+ * A context belongs to a single evaluation and must not be shared between
+ * threads, except for the unchecked one, which has no state.
+ */
+class ExecutionContext {
+    // steps between two reads of the clock when the budget does not yield
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private static final ExecutionContext UNCHECKED = new ExecutionContext(Budget.UNLIMITED) {
+        @Override void enter() {}
+        @Override void exit() {}
+        @Override void allocate(long bytes) {}
+    };
+
+    private final Budget budget;
+    private final long started;         // in System.nanoTime() units
+    private final long timeoutNanos;
+    private final long checkpointMask;
+    private long steps = 0;
+    private int depth = 0;
+    private long allocated = 0;
+
+
+    /**
+     * Constructs a new ExecutionContext, starting the clock of the budget now
+     * @param budget The limits of the evaluation
+     */
+    ExecutionContext(Budget budget) {
+        this.budget = budget;
+        this.started = System.nanoTime();
+        this.timeoutNanos = budget.timeout == null ? 0 : budget.timeout.toNanos();
+
+        if (budget.yieldInterval > 0)
+            this.checkpointMask = budget.yieldInterval - 1;
+        else if (budget.timeout != null)
+            this.checkpointMask = CLOCK_INTERVAL - 1;
+        else
+            // steps is always positive, so (steps & mask) is never 0
+            this.checkpointMask = Long.MAX_VALUE;
+    }
+
+
+    /**
+     * @return A context that counts and checks nothing, for trusted scripts
+     */
+    static ExecutionContext unchecked() {
+        return UNCHECKED;
+    }
+
+
+    /**
+     * Charges one step for a node about to be visited.
+     * 
+     * @throws BudgetExceeded if the steps, the depth or the time ran out
+     */
+    void enter() {
+        if (++steps > budget.maxSteps)
+            throw new BudgetExceeded(Kind.STEPS, budget.maxSteps, steps);
+        if (++depth > budget.maxDepth)
+            throw new BudgetExceeded(Kind.DEPTH, budget.maxDepth, depth);
+
+        if ((steps & checkpointMask) == 0)
+            checkpoint();
+    }
+
+    /**
+     * Marks the node last entered as visited.
+     */
+    void exit() {
+        depth--;
+    }
+
+    /**
+     * Charges an estimated allocation.
+     * 
+     * @param bytes The estimated size of the object about to be allocated
+     * @throws BudgetExceeded if the allocation budget ran out
+     */
+    void allocate(long bytes) {
+        allocated += bytes;
+        if (allocated > budget.maxAllocation)
+            throw new BudgetExceeded(Kind.ALLOCATION, budget.maxAllocation, allocated);
+    }
+
+    /**
+     * @return The number of nodes visited so far
+     */
+    long steps() {
+        return steps;
+    }
+
+    /**
+     * Checks the deadline and, if the budget asks for it, yields the thread:
+     * a cooperative preemption point.
+     */
+    private void checkpoint() {
+        if (budget.timeout != null) {
+            long elapsed = System.nanoTime() - started;
+            if (elapsed > timeoutNanos)
+                throw new BudgetExceeded(Kind.TIME, timeoutNanos, elapsed);
+        }
+
+        if (budget.yieldInterval > 0)
+            Thread.yield();
+    }
+}
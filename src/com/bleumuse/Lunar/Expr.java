@@ -1,6 +1,9 @@
 package com.bleumuse.lunar;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Defines the context-free grammars of the Lunar language. Each expression is
@@ -14,12 +17,60 @@ import java.util.List;
  *  \_ Grouping
  *  \_ Literl
  *  \_ Unary
+ *  \_ Variable
  */
-abstract class Expr {
+public abstract class Expr {
 
   // each implementing visitable class must define
   // functionality for the accept() method
-  abstract <R> R accept(Visitor<R> visitor);
+  public abstract <R> R accept(Visitor<R> visitor);
+
+  /**
+   * Shares structurally equal subtrees between the nodes built through the
+   * of() factories. Since children are interned before their parents,
+   * identical subtrees end up as one object.
+   * 
+   * An Interner belongs to a single compilation and is not thread-safe, so
+   * compilations running at once never contend on a shared table, and the
+   * table is dropped together with the compilation. Tokens are compared by
+   * what they spell, not by where they appear: a shared node keeps the tokens
+   * of its first occurrence, so an error raised through it points at that
+   * occurrence. Trees that must report exact positions are built with the
+   * constructors instead.
+   */
+  static final class Interner {
+    private final Map<Expr, Expr> nodes = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    <E extends Expr> E intern(E node) {
+      Expr existing = nodes.putIfAbsent(node, node);
+      return existing == null ? node : (E) existing;
+    }
+
+    // the number of distinct nodes built so far
+    int size() {
+      return nodes.size();
+    }
+  }
+
+  // tokens match for interning when they spell the same lexeme, wherever it is
+  static boolean sameToken(Token a, Token b) {
+    if (a == b) return true;
+    if (a.type() != b.type() || a.length() != b.length()) return false;
+    for (int i = 0; i < a.length(); i++) {
+      if (a.charAt(i) != b.charAt(i)) return false;
+    }
+    return Objects.equals(a.literal(), b.literal());
+  }
+
+  // a hash consistent with sameToken()
+  static int tokenHash(Token token) {
+    int hash = token.type().ordinal();
+    for (int i = 0; i < token.length(); i++) {
+      hash = 31 * hash + token.charAt(i);
+    }
+    return hash;
+  }
 
   /**
    * Binary expr is a recursive structure and may be used to generate 
@@ -27,7 +78,7 @@ abstract class Expr {
    * selects for a valid token and splits the two operand Expressions
    * on the LHS and RHS.
    */
-  static class Binary extends Expr {
+  public static class Binary extends Expr {
     // Binary expr constructor 
     Binary(Expr left, Token operator, Expr right) {
       this.left = left;
@@ -35,40 +86,90 @@ abstract class Expr {
       this.right = right;
     }
 
+    // interning factory, returns the shared Binary node for these fields
+    static Binary of(Interner interner, Expr left, Token operator, Expr right) {
+      return interner.intern(new Binary(left, operator, right));
+    }
+
+    /**
+     * Binary nodes are equal when all of their fields are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Binary)) return false;
+      Binary other = (Binary) o;
+      return Objects.equals(left, other.left) &&
+          sameToken(operator, other.operator) &&
+          Objects.equals(right, other.right);
+    }
+
+    // the hash is cached, a node never changes once built
+    @Override
+    public int hashCode() {
+      if (hash == 0) hash = Objects.hash(left, tokenHash(operator), right);
+      return hash;
+    }
+
     /**
      * Performs task on Binary Expression, passing itself 
      * or its own instance as the "visitor"
      */
     @Override
-    <R> R accept(Visitor<R> visitor) {
+    public <R> R accept(Visitor<R> visitor) {
       return visitor.visitBinaryExpr(this);
     }
 
-    final Expr left;
-    final Token operator;
-    final Expr right;
+    public final Expr left;
+    public final Token operator;
+    public final Expr right;
+    private int hash;
   }
 
   /**
    * The Grouping grammar production is a recursive production and wraps 
    * one or more parenthesis around a single Expression.
    */
-  static class Grouping extends Expr {
+  public static class Grouping extends Expr {
     // Grouping expr constructor 
     Grouping(Expr expression) {
       this.expression = expression;
     }
 
+    // interning factory, returns the shared Grouping node for these fields
+    static Grouping of(Interner interner, Expr expression) {
+      return interner.intern(new Grouping(expression));
+    }
+
+    /**
+     * Grouping nodes are equal when all of their fields are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Grouping)) return false;
+      Grouping other = (Grouping) o;
+      return Objects.equals(expression, other.expression);
+    }
+
+    // the hash is cached, a node never changes once built
+    @Override
+    public int hashCode() {
+      if (hash == 0) hash = Objects.hash(expression);
+      return hash;
+    }
+
     /**
      * Performs task on Grouping Expression, passing itself 
      * or its own instance as the "visitor"
      */
     @Override
-    <R> R accept(Visitor<R> visitor) {
+    public <R> R accept(Visitor<R> visitor) {
       return visitor.visitGroupingExpr(this);
     }
 
-    final Expr expression;
+    public final Expr expression;
+    private int hash;
   }
 
   /**
@@ -76,45 +177,140 @@ abstract class Expr {
    * symbol. Literals includes NUMBER, STRING, (whose text representation
    * is subject to vary), boolean TRUE, FALSE, and NIL.
    */
-  static class Literal extends Expr {
+  public static class Literal extends Expr {
     // Literal constructor 
     Literal(Object value) {
       this.value = value;
     }
 
+    // interning factory, returns the shared Literal node for these fields
+    static Literal of(Interner interner, Object value) {
+      return interner.intern(new Literal(value));
+    }
+
+    /**
+     * Literal nodes are equal when all of their fields are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Literal)) return false;
+      Literal other = (Literal) o;
+      return Objects.equals(value, other.value);
+    }
+
+    // the hash is cached, a node never changes once built
+    @Override
+    public int hashCode() {
+      if (hash == 0) hash = Objects.hash(value);
+      return hash;
+    }
+
     /**
      * Performs task on Literal, passing itself 
      * or its own instance as the "visitor"
      */
     @Override
-    <R> R accept(Visitor<R> visitor) {
+    public <R> R accept(Visitor<R> visitor) {
       return visitor.visitLiteralExpr(this);
     }
 
-    final Object value;
+    public final Object value;
+    private int hash;
   }
 
   /**
    * The Unary grammar structure maps to a single Token operator
    * on LHS and is followed by an Expression on the RHS.
    */
-  static class Unary extends Expr {
+  public static class Unary extends Expr {
     // Unary expr constructor
     Unary(Token operator, Expr right) {
       this.operator = operator;
       this.right = right;
     }
 
+    // interning factory, returns the shared Unary node for these fields
+    static Unary of(Interner interner, Token operator, Expr right) {
+      return interner.intern(new Unary(operator, right));
+    }
+
+    /**
+     * Unary nodes are equal when all of their fields are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Unary)) return false;
+      Unary other = (Unary) o;
+      return sameToken(operator, other.operator) &&
+          Objects.equals(right, other.right);
+    }
+
+    // the hash is cached, a node never changes once built
+    @Override
+    public int hashCode() {
+      if (hash == 0) hash = Objects.hash(tokenHash(operator), right);
+      return hash;
+    }
+
     /**
      * Performs task on Unary Expression, passing itself 
      * or its own instance as the "visitor"
      */
     @Override
-    <R> R accept(Visitor<R> visitor) {
+    public <R> R accept(Visitor<R> visitor) {
       return visitor.visitUnaryExpr(this);
     }
 
-    final Token operator;
-    final Expr right;
+    public final Token operator;
+    public final Expr right;
+    private int hash;
+  }
+
+  /**
+   * The Variable is a terminal production referring to a value by the
+   * name of its IDENTIFIER token.
+   */
+  public static class Variable extends Expr {
+    // Variable constructor
+    Variable(Token name) {
+      this.name = name;
+    }
+
+    // interning factory, returns the shared Variable node for these fields
+    static Variable of(Interner interner, Token name) {
+      return interner.intern(new Variable(name));
+    }
+
+    /**
+     * Variable nodes are equal when all of their fields are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Variable)) return false;
+      Variable other = (Variable) o;
+      return sameToken(name, other.name);
+    }
+
+    // the hash is cached, a node never changes once built
+    @Override
+    public int hashCode() {
+      if (hash == 0) hash = Objects.hash(tokenHash(name));
+      return hash;
+    }
+
+    /**
+     * Performs task on Variable, passing itself 
+     * or its own instance as the "visitor"
+     */
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitVariableExpr(this);
+    }
+
+    public final Token name;
+    private int hash;
   }
 }
@@ -0,0 +1,207 @@
+package com.bleumuse.lunar;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The tokens of a source file scanned in place, for files too large to be
+ * read into a String. The file is mapped one window of at most 1 GB at a
+ * time and scanned into a TokenBuffer, so neither the source nor its tokens
+ * end up on the heap, and offsets are longs, so files may be larger than the
+ * 2 GB a single mapping or an int offset can reach.
+ * 
+ * Each window is cut after its last newline, since only strings and block
+ * comments run across lines; one of those still open at the cut is scanned
+ * again from its start in the next window. A window is unmapped as soon as
+ * it is scanned. The packed tokens stay in direct memory until close(), and
+ * count against -XX:MaxDirectMemorySize meanwhile, about 24 bytes per token;
+ * see TokenBuffer. Only the first 1000 errors are kept as Diagnostics, the
+ * others are only counted.
+ * 
+ * A FileScanner is not thread-safe.
+ */
+public final class FileScanner implements AutoCloseable {
+    // the largest part of the file mapped at once
+    static final int WINDOW = 1 << 30;
+    // the most diagnostics kept, on the heap, however many errors the file holds
+    static final int MAX_DIAGNOSTICS = 1000;
+
+    private final FileChannel channel;
+    private final long size;
+    private final TokenBuffer tokens = new TokenBuffer();
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private long errors = 0;
+
+
+    private FileScanner(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+
+    /**
+     * Scans the file at the given path, see LunarEngine.scanFile(), mapping
+     * windows of the given size. Windows smaller than the default let tests
+     * and benchmarks put window boundaries wherever they need them.
+     * 
+     * @param path   The path of the source file
+     * @param window The largest number of bytes mapped at once
+     * @return The scanned file, which must be closed
+     * @throws IOException if the file cannot be read, or holds a line or a
+     *         lexeme longer than a window
+     */
+    public static FileScanner scan(Path path, int window) throws IOException {
+        FileScanner scanner = new FileScanner(FileChannel.open(path, StandardOpenOption.READ));
+        try {
+            scanner.scanWindows(window);
+            return scanner;
+        } catch (IOException | RuntimeException | Error e) {
+            scanner.close();
+            throw e;
+        }
+    }
+
+    private void scanWindows(int window) throws IOException {
+        long position = 0;
+        while (position < size) {
+            int length = (int) Math.min(window, size - position);
+            boolean last = position + length == size;
+
+            MappedSource source = MappedSource.map(channel, position, length);
+            try {
+                int stop = last ? length : lastNewline(source) + 1;
+                if (stop == 0)
+                    throw new IOException("Line at offset " + position +
+                            " is longer than " + window + " bytes.");
+
+                // a window ending on a newline still has the rest of the file after it
+                Scanner scanner = new Scanner(source, 0, stop, !last);
+                scanner.limitDiagnostics(MAX_DIAGNOSTICS - diagnostics.size());
+                int scanned = scanner.scanInto(tokens, position);
+                diagnostics.addAll(scanner.diagnostics());
+                errors += scanner.errorCount();
+                if (scanned == 0)
+                    throw new IOException("Lexeme at offset " + position +
+                            " is longer than " + window + " bytes.");
+
+                position += scanned;
+            } finally {
+                source.unmap();
+            }
+        }
+
+        tokens.add(TokenType.EOF, size, 0, 0);
+    }
+
+    private static int lastNewline(MappedSource source) {
+        for (int i = source.length() - 1; i >= 0; i--) {
+            if (source.charAt(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The length of the scanned file, in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The number of tokens, including the final EOF token
+     */
+    public long tokenCount() {
+        return tokens.size();
+    }
+
+    /**
+     * @param index The index of a token, below tokenCount()
+     * @return The type of the token
+     */
+    public TokenType type(long index) {
+        return tokens.type(index);
+    }
+
+    /**
+     * @param index The index of a token, below tokenCount()
+     * @return The file position of the first character of the token
+     */
+    public long offset(long index) {
+        return tokens.offset(index);
+    }
+
+    /**
+     * @param index The index of a token, below tokenCount()
+     * @return The number of characters in the lexeme of the token
+     */
+    public int length(long index) {
+        return tokens.length(index);
+    }
+
+    /**
+     * @param index The index of a NUMBER token, below tokenCount()
+     * @return The value of the number literal
+     */
+    public double number(long index) {
+        return tokens.number(index);
+    }
+
+    /**
+     * Reads the lexeme of a token back from the file.
+     * 
+     * @param index The index of a token, below tokenCount()
+     * @return The lexeme of the token decoded as UTF-8
+     * @throws IOException if the file cannot be read
+     */
+    public String lexeme(long index) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(tokens.length(index));
+        long position = tokens.offset(index);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0)
+                throw new EOFException("File shrank while being read.");
+        }
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The first errors found while scanning, at most 1000, in file order
+     */
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return The number of errors found while scanning, including those
+     *         past the ones kept in diagnostics()
+     */
+    public long errorCount() {
+        return errors;
+    }
+
+    /**
+     * @return true if scanning found any error
+     */
+    public boolean hadError() {
+        return errors > 0;
+    }
+
+    /**
+     * Frees the packed tokens and closes the file.
+     * 
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        tokens.close();
+        channel.close();
+    }
+}
@@ -0,0 +1,194 @@
+package com.bleumuse.lunar;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates an expression tree one node at a time. Every node visited is
+ * charged to the ExecutionContext of the evaluation, so a runaway or very
+ * large expression stops with a BudgetExceeded once its Budget runs out,
+ * and periodically yields its thread to the other evaluations.
+ *
+ * Numbers are Doubles, strings are Strings, and nil is null. Only nil and
+ * false are falsey. "and" and "or" short-circuit and return the deciding
+ * operand.
+ *
+ * Nothing an expression does has side effects, and its variables do not
+ * change during an evaluation, so a subtree shared by several parents has
+ * the same value everywhere. The value of a shared node is remembered the
+ * first time it is computed, and a later visit costs a single step.
+ */
+class Interpreter implements Visitor<Object> {
+    // rough sizes used to estimate allocations, in bytes
+    private static final int BOXED_DOUBLE_BYTES = 16;
+    private static final int STRING_HEADER_BYTES = 40;
+    private static final int MEMO_ENTRY_BYTES = 32;
+
+    private final ExecutionContext context;
+    private final Map<String, Object> variables;
+    private final Set<Expr> shared;
+    private final Map<Expr, Object> memo;  // the values of the shared nodes visited, null if none are
+
+    /**
+     * @param context   The usage tracker of this evaluation
+     * @param variables The values Variable expressions refer to by name
+     */
+    Interpreter(ExecutionContext context, Map<String, Object> variables) {
+        this(context, variables, Collections.emptySet());
+    }
+
+    /**
+     * @param context   The usage tracker of this evaluation
+     * @param variables The values Variable expressions refer to by name
+     * @param shared    The nodes used more than once in the tree, whose
+     *                  values are computed only once
+     */
+    Interpreter(ExecutionContext context, Map<String, Object> variables, Set<Expr> shared) {
+        this.context = context;
+        this.variables = variables;
+        this.shared = shared;
+        this.memo = shared.isEmpty() ? null : new IdentityHashMap<>();
+    }
+
+    /**
+     * Evaluates the given expression, charging its node to the budget.
+     *
+     * @param expr The expression to evaluate
+     * @return The value of the expression
+     * @throws RuntimeError if an operand has the wrong type
+     * @throws BudgetExceeded if the evaluation ran out of budget
+     */
+    Object evaluate(Expr expr) {
+        context.enter();
+        try {
+            if (memo == null || !shared.contains(expr))
+                return expr.accept(this);
+
+            Object value = memo.get(expr);
+            if (value == null && !memo.containsKey(expr)) {
+                value = expr.accept(this);
+                context.allocate(MEMO_ENTRY_BYTES);
+                memo.put(expr, value);
+            }
+            return value;
+        } finally {
+            context.exit();
+        }
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+        // the logical operators only evaluate the right operand when needed
+        if (expr.operator.type == TokenType.AND || expr.operator.type == TokenType.OR) {
+            Object left = evaluate(expr.left);
+            if (isTruthy(left) == (expr.operator.type == TokenType.OR))
+                return left;
+            return evaluate(expr.right);
+        }
+
+        Object left = evaluate(expr.left);
+        Object right = evaluate(expr.right);
+
+        switch (expr.operator.type) {
+            case PLUS:
+                if (left instanceof Double && right instanceof Double)
+                    return number((double) left + (double) right);
+                if (left instanceof String && right instanceof String) {
+                    // charge the new string before building it
+                    context.allocate(STRING_HEADER_BYTES +
+                            2L * (((String) left).length() + ((String) right).length()));
+                    return (String) left + (String) right;
+                }
+                throw new RuntimeError(expr.operator,
+                        "Operands must be two numbers or two strings.");
+            case MINUS:
+                checkNumbers(expr.operator, left, right);
+                return number((double) left - (double) right);
+            case STAR:
+                checkNumbers(expr.operator, left, right);
+                return number((double) left * (double) right);
+            case SLASH:
+                checkNumbers(expr.operator, left, right);
+                return number((double) left / (double) right);
+            case GREATER:
+                checkNumbers(expr.operator, left, right);
+                return (double) left > (double) right;
+            case GREATER_EQUAL:
+                checkNumbers(expr.operator, left, right);
+                return (double) left >= (double) right;
+            case LESS:
+                checkNumbers(expr.operator, left, right);
+                return (double) left < (double) right;
+            case LESS_EQUAL:
+                checkNumbers(expr.operator, left, right);
+                return (double) left <= (double) right;
+            case EQUAL_EQUAL:
+                return isEqual(left, right);
+            case BANG_EQUAL:
+                return !isEqual(left, right);
+            default:
+                throw new RuntimeError(expr.operator, "Unknown binary operator.");
+        }
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+        return evaluate(expr.expression);
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        return expr.value;
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        Object right = evaluate(expr.right);
+
+        switch (expr.operator.type) {
+            case MINUS:
+                if (!(right instanceof Double))
+                    throw new RuntimeError(expr.operator, "Operand must be a number.");
+                return number(-(double) right);
+            case BANG:
+                return !isTruthy(right);
+            default:
+                throw new RuntimeError(expr.operator, "Unknown unary operator.");
+        }
+    }
+
+    @Override
+    public Object visitVariableExpr(Expr.Variable expr) {
+        // the name is built from the source on every lookup, charge it once
+        context.allocate(STRING_HEADER_BYTES + 2L * expr.name.length());
+        String name = expr.name.lexeme();
+        Object value = variables.get(name);
+        if (value == null && !variables.containsKey(name))
+            throw new RuntimeError(expr.name, "Undefined variable '" + name + "'.");
+        return value;
+    }
+
+    private Object number(double value) {
+        context.allocate(BOXED_DOUBLE_BYTES);
+        return value;
+    }
+
+    private static void checkNumbers(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double)
+            return;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null) return b == null;
+        return a.equals(b);
+    }
+}
@@ -0,0 +1,82 @@
+package com.bleumuse.lunar;
+
+import java.util.Arrays;
+
+
+/**
+ * Maps source offsets to line and column numbers. Tokens and diagnostics
+ * only carry the offset of their first character; the table of line start
+ * offsets is built on the first lookup, so sources whose positions are never
+ * asked for pay nothing for it. A lookup is a binary search over that table.
+ * 
+ * Lines and columns are counted from 1. A LineMap may be shared between
+ * threads.
+ */
+public final class LineMap {
+    private final CharSequence source;
+    private volatile int[] starts;  // the offset of the first character of each line
+
+
+    /**
+     * Constructs a new LineMap over the given source, without scanning it yet
+     * @param source The raw source code the offsets refer to
+     */
+    LineMap(CharSequence source) {
+        this.source = source;
+    }
+
+
+    /**
+     * @param offset An index into the source, up to and including its length
+     * @return The line the offset falls on
+     */
+    public int line(int offset) {
+        return lineIndex(offset) + 1;
+    }
+
+    /**
+     * @param offset An index into the source, up to and including its length
+     * @return The column of the offset within its line
+     */
+    public int column(int offset) {
+        return offset - starts()[lineIndex(offset)] + 1;
+    }
+
+    /**
+     * Finds the last line starting at or before the given offset.
+     * 
+     * @param offset An index into the source
+     * @return The zero-based index of the line containing the offset
+     */
+    private int lineIndex(int offset) {
+        int index = Arrays.binarySearch(starts(), offset);
+        // a miss returns -(insertion point) - 1, the line before that point holds the offset
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Returns the line start table, building it on first use. Building twice
+     * from two threads is harmless since both produce the same table.
+     * 
+     * @return The offset of the first character of each line
+     */
+    private int[] starts() {
+        int[] table = starts;
+        if (table != null)
+            return table;
+
+        int count = 1;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') count++;
+        }
+
+        table = new int[count];
+        int line = 1;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') table[line++] = i + 1;
+        }
+
+        starts = table;
+        return table;
+    }
+}
@@ -5,10 +5,13 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 
 public class Lunar {
+    private static final LunarEngine engine = new LunarEngine();
+    // files larger than this are only scanned, in place, rather than read into a String
+    private static final long LARGE_FILE = 1L << 30;
     static boolean hadError = false;
     public static void main(String[] args) throws IOException {
         // accepts one arg [filename] or none
@@ -24,6 +27,12 @@ public class Lunar {
 
     // reads the file from path
     private static void runFile(String path) throws IOException {
+        if (Files.size(Paths.get(path)) > LARGE_FILE) {
+            scanLargeFile(Paths.get(path));
+            if (hadError) System.exit(65);
+            return;
+        }
+
         byte[] bytes = Files.readAllBytes(Paths.get(path));
         // runs the input through the core function
         run(new String(bytes, Charset.defaultCharset()));
@@ -32,6 +41,20 @@ public class Lunar {
         if (hadError) System.exit(65);
     }
 
+    // scans a file too large to be held in memory, reporting errors by offset
+    private static void scanLargeFile(Path path) throws IOException {
+        try (FileScanner scanner = engine.scanFile(path)) {
+            for (Diagnostic diagnostic : scanner.diagnostics()) {
+                System.err.println(diagnostic);
+                hadError = true;
+            }
+            long more = scanner.errorCount() - scanner.diagnostics().size();
+            if (more > 0)
+                System.err.println("... and " + more + " more errors.");
+            System.out.println(scanner.tokenCount() + " tokens");
+        }
+    }
+
     // running the REPL, executes line by line
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
@@ -51,25 +74,31 @@ public class Lunar {
 
     // runFile and runPrompt are wrapper functions for run
     private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+        Script script = engine.compile(source);
 
-        // printing the tokens
-        for (Token token : tokens) {
-            System.out.println(token);
+        // reporting the errors collected while compiling
+        for (Diagnostic diagnostic : script.diagnostics()) {
+            error(script.lines().line((int) diagnostic.offset),
+                    script.lines().column((int) diagnostic.offset), diagnostic.message);
         }
+
+        // stop if there was a syntax error
+        if (script.hadError()) return;
+
+        // printing the syntax tree
+        System.out.println(new AstPrinter().print(script.expression()));
     }
 
     // raises an en error in the program
-    static void error(int line, String message) {
-        report(line, "", message);
+    static void error(int line, int column, String message) {
+        report(line, column, "", message);
     }
 
     // reports back a message and the location of where the error has been raised
-    private static void report(int line, String where,
+    private static void report(int line, int column, String where,
             String message) {
         System.err.println(
-                "[line " + line + "] Error" + where + ": " + message);
+                "[line " + line + ", column " + column + "] Error" + where + ": " + message);
         hadError = true;
     }
 }
@@ -0,0 +1,150 @@
+package com.bleumuse.lunar;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * The embedding entry point of Lunar. Unlike the Lunar command line driver,
+ * an engine keeps no static or shared mutable state: every call to compile()
+ * runs on its own Scanner, and the resulting Script is immutable, while every
+ * call to eval() tracks its usage in its own ExecutionContext. One engine may
+ * therefore be used from any number of threads at once, and a Script compiled
+ * once may be evaluated by all of them.
+ */
+public final class LunarEngine {
+    // sources at least this long are scanned in parallel chunks
+    private static final int PARALLEL_THRESHOLD = 1 << 22;
+    // the smallest chunk worth handing to another thread
+    private static final int MIN_CHUNK = 1 << 20;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new LunarEngine that scans large sources on the common
+     * ForkJoinPool
+     */
+    public LunarEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new LunarEngine that scans large sources on the given pool.
+     * A pool whose parallelism is 1 makes every compilation serial.
+     * @param pool The pool to scan large sources on
+     */
+    public LunarEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Compiles the given source into a Script, scanning it into tokens and
+     * parsing those into a syntax tree. Errors do not stop the compilation,
+     * they are collected in the Script's diagnostics. Very large
+     * sources are scanned in parallel on the engine's ForkJoinPool, which gives
+     * the same result as scanning them serially.
+     * 
+     * An expression whose syntax tree would be more than Budget.MAX_DEPTH
+     * (512) nodes deep is rejected with an error, so that evaluating,
+     * printing or batch-compiling a Script never overflows a thread stack of
+     * 512 KB or more, the JVM default being 1 MB.
+     * 
+     * @param source The raw source code to compile
+     * @return The immutable compiled form of the source
+     */
+    public Script compile(String source) {
+        return compile(source, false);
+    }
+
+    /**
+     * Compiles the given source like compile(String), optionally sharing
+     * structurally equal subtrees. A shared subtree is built once, and
+     * evaluated once per eval() however many times it appears, which suits
+     * generated sources that repeat the same subexpressions. Its tokens are
+     * those of its first occurrence, so a RuntimeError raised inside it
+     * points at that occurrence.
+     * 
+     * @param source The raw source code to compile
+     * @param share  true to build structurally equal subtrees only once
+     * @return The immutable compiled form of the source
+     */
+    public Script compile(String source, boolean share) {
+        if (source.length() >= PARALLEL_THRESHOLD && pool.getParallelism() > 1) {
+            int chunks = Math.min(pool.getParallelism() * 4,
+                    source.length() / MIN_CHUNK);
+            ParallelScanner scanner = new ParallelScanner(source, chunks, pool);
+            List<Token> tokens = scanner.scanTokens();
+
+            return new Script(source, tokens, scanner.diagnostics(), share);
+        }
+
+        Scanner scanner = new Scanner(source);
+        List<Token> tokens = scanner.scanTokens();
+
+        return new Script(source, tokens, scanner.diagnostics(), share);
+    }
+
+    /**
+     * Scans the file at the given path into tokens without reading it into
+     * a String, for sources too large for compile(). The file is mapped in
+     * windows of at most 1 GB and its tokens are packed into direct memory,
+     * so it may be larger than 2 GB and adds nothing to the heap however
+     * many tokens it holds. The tokens are not parsed.
+     * 
+     * The packed tokens take about 24 bytes each and count against
+     * -XX:MaxDirectMemorySize until the returned FileScanner is closed. Of
+     * the scanning errors, only the first 1000 are kept as Diagnostics.
+     * 
+     * @param path The path of the source file
+     * @return The tokens and scanning errors of the file, which must be closed
+     * @throws IOException if the file cannot be read, or holds a line or a
+     *         lexeme longer than 1 GB
+     */
+    public FileScanner scanFile(Path path) throws IOException {
+        return FileScanner.scan(path, FileScanner.WINDOW);
+    }
+
+    /**
+     * Evaluates a compiled script within the given budget.
+     * 
+     * @param script    The script to evaluate, which must have compiled without errors
+     * @param variables The values the script's variables refer to by name
+     * @param budget    The limits the evaluation must stay within
+     * @return The value of the script: a Double, a String, a Boolean or null
+     * @throws IllegalArgumentException if the script had compile errors
+     * @throws RuntimeError if an operand has the wrong type
+     * @throws BudgetExceeded if the evaluation ran out of budget
+     */
+    public Object eval(Script script, Map<String, Object> variables, Budget budget) {
+        if (script.hadError())
+            throw new IllegalArgumentException("Script has compile errors.");
+
+        Interpreter interpreter = new Interpreter(new ExecutionContext(budget), variables,
+                script.sharedNodes());
+        return interpreter.evaluate(script.expression());
+    }
+
+    /**
+     * Evaluates a compiled script with no budget at all: nothing is counted
+     * and nothing is checked, so a script that never ends never returns.
+     * Only for scripts from a trusted source. The depth of the syntax tree is
+     * still bounded by compile().
+     * 
+     * @param script    The script to evaluate, which must have compiled without errors
+     * @param variables The values the script's variables refer to by name
+     * @return The value of the script: a Double, a String, a Boolean or null
+     * @throws IllegalArgumentException if the script had compile errors
+     * @throws RuntimeError if an operand has the wrong type
+     */
+    public Object evalTrusted(Script script, Map<String, Object> variables) {
+        if (script.hadError())
+            throw new IllegalArgumentException("Script has compile errors.");
+
+        Interpreter interpreter = new Interpreter(ExecutionContext.unchecked(), variables,
+                script.sharedNodes());
+        return interpreter.evaluate(script.expression());
+    }
+}
@@ -0,0 +1,81 @@
+package com.bleumuse.lunar;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * A window of a source file mapped into memory and read in place by the
+ * Scanner, so that its contents never have to be copied into a String on
+ * the heap. A single mapping is limited to 2 GB, so a larger file is read
+ * as a series of windows, see FileScanner.
+ * 
+ * Every byte is one character, which keeps offsets equal to positions in
+ * the window. Lunar syntax is plain ASCII; non-ASCII bytes may only appear
+ * inside strings and comments, and a lexeme taken out with subSequence() is
+ * decoded as UTF-8.
+ */
+final class MappedSource implements CharSequence {
+    private final MappedByteBuffer bytes;
+    private final int from;
+    private final int to;
+
+
+    private MappedSource(MappedByteBuffer bytes, int from, int to) {
+        this.bytes = bytes;
+        this.from = from;
+        this.to = to;
+    }
+
+
+    /**
+     * Maps part of a file read-only. The mapping stays valid once the
+     * channel is closed, until unmap() is called.
+     * 
+     * @param channel  The channel of the source file
+     * @param position The file position of the first character of the window
+     * @param size     The number of characters in the window
+     * @return The mapped window
+     * @throws IOException if the window cannot be mapped
+     */
+    static MappedSource map(FileChannel channel, long position, int size) throws IOException {
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return new MappedSource(bytes, 0, size);
+    }
+
+    /**
+     * Releases the mapping right away instead of when the buffer is
+     * collected. Neither this source nor any subSequence() of it may be
+     * read afterwards.
+     */
+    void unmap() {
+        DirectMemory.free(bytes);
+    }
+
+    @Override
+    public int length() {
+        return to - from;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(from + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new MappedSource(bytes, from + start, from + end);
+    }
+
+    /**
+     * @return The characters of this source decoded as UTF-8
+     */
+    @Override
+    public String toString() {
+        byte[] copy = new byte[length()];
+        bytes.get(from, copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+}
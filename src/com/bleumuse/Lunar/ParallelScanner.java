@@ -0,0 +1,125 @@
+package com.bleumuse.lunar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.bleumuse.lunar.TokenType.*;
+
+/**
+ * Scans a single large source on several threads and produces exactly the
+ * tokens and diagnostics the serial Scanner would.
+ * 
+ * The source is split into chunks that each begin right after a newline, and
+ * every chunk is scanned on its own Scanner as if it started outside of any
+ * lexeme. That guess only fails when a string or block-comment crosses into
+ * the chunk. Since the chunks are joined in order, the join knows where the
+ * previous chunk really stopped: a chunk starting there is taken as is, any
+ * other chunk is re-scanned serially from that point up to its end.
+ */
+class ParallelScanner {
+    private final String source;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final List<Token> tokens = new ArrayList<>();
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    /**
+     * Holds the speculative result of scanning one chunk.
+     */
+    private static class Chunk {
+        final int from;         // the index of the first character of the chunk
+        final int to;           // the index one past its last character
+        final Scanner scanner;  // the scanner over [from, to)
+        int stop;               // where that scanner stopped
+
+        Chunk(String source, int from, int to) {
+            this.from = from;
+            this.to = to;
+            this.scanner = new Scanner(source, from, to);
+        }
+    }
+
+    /**
+     * @param source      The raw source code
+     * @param parallelism The number of chunks to split the source into
+     * @param pool        The pool the chunks are scanned on
+     */
+    ParallelScanner(String source, int parallelism, ForkJoinPool pool) {
+        this.source = source;
+        this.parallelism = parallelism;
+        this.pool = pool;
+    }
+
+    /**
+     * Scans every chunk concurrently, then joins the results in source order,
+     * fixing up the chunks whose start was guessed wrong.
+     * 
+     * @return This object's list of tokens, terminated by an EOF token
+     */
+    List<Token> scanTokens() {
+        List<Chunk> chunks = split();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            tasks.add(pool.submit(() -> {
+                chunk.stop = chunk.scanner.scanUntil(chunk.to);
+            }));
+        }
+
+        int position = 0;
+        int index = 0;
+        while (position < source.length()) {
+            // skip the chunks already covered by the previous one or a re-scan
+            while (chunks.get(index).to <= position) index++;
+            Chunk chunk = chunks.get(index);
+
+            if (chunk.from == position) {
+                // the guess was right, the chunk's own scan is the serial one
+                tasks.get(index).join();
+                tokens.addAll(chunk.scanner.tokens());
+                diagnostics.addAll(chunk.scanner.diagnostics());
+                position = chunk.stop;
+                if (position == chunk.to) continue;
+            }
+
+            // a lexeme runs into or out of this chunk, scan its rest serially
+            Scanner scanner = new Scanner(source, position, source.length());
+            position = scanner.scanUntil(chunk.to);
+            tokens.addAll(scanner.tokens());
+            diagnostics.addAll(scanner.diagnostics());
+        }
+
+        // the remaining tasks are only speculative work that was not needed
+        for (ForkJoinTask<?> task : tasks) task.join();
+
+        tokens.add(new Token(EOF, source, source.length(), 0, null));
+        return tokens;
+    }
+
+    /**
+     * @return This object's list of diagnostics, in source order
+     */
+    List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Splits the source into at most parallelism chunks of roughly equal
+     * size, each ending right after a newline or at the end of the source.
+     * 
+     * @return The chunks, in source order
+     */
+    private List<Chunk> split() {
+        List<Chunk> chunks = new ArrayList<>();
+        int size = Math.max(1, source.length() / parallelism);
+        int from = 0;
+        while (from < source.length()) {
+            int newline = source.indexOf('\n', Math.min(from + size, source.length()) - 1);
+            int to = newline < 0 ? source.length() : newline + 1;
+            chunks.add(new Chunk(source, from, to));
+            from = to;
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,355 @@
+package com.bleumuse.lunar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static com.bleumuse.lunar.TokenType.*;
+
+/**
+ * Builds the syntax tree of a single expression from a list of tokens by
+ * recursive descent. Each grammar rule below is one method, from the lowest
+ * precedence to the highest:
+ * 
+ * expression -> or
+ * or         -> and ( "or" and )*
+ * and        -> equality ( "and" equality )*
+ * equality   -> comparison ( ( "!=" | "==" ) comparison )*
+ * comparison -> term ( ( ">" | ">=" | "<" | "<=" ) term )*
+ * term       -> factor ( ( "-" | "+" ) factor )*
+ * factor     -> unary ( ( "/" | "*" ) unary )*
+ * unary      -> ( "!" | "-" ) unary | primary
+ * primary    -> NUMBER | STRING | "true" | "false" | "nil"
+ *             | IDENTIFIER | "(" expression ")"
+ * 
+ * A parser that shares nodes builds them through an Expr.Interner of its
+ * own, so that every repeated subexpression of the source becomes a single
+ * node, and remembers the composite nodes that ended up shared.
+ */
+class Parser {
+    // the deepest nesting of unary operators and parentheses accepted, which
+    // keeps hostile input from overflowing the stack of the parser
+    private static final int MAX_NESTING = 256;
+    // the tallest syntax tree accepted, counted in nodes from the root down to
+    // its deepest leaf. Chains of binary operators are parsed by loops rather
+    // than recursion, so they are only bounded by this, which in turn bounds
+    // every recursive walk over a parsed tree: printers, interpreters, the
+    // batch compiler. It is the deepest nesting a Budget may allow
+    static final int MAX_DEPTH = Budget.MAX_DEPTH;
+
+    /**
+     * Unwinds the parser back to parse() once an error has been recorded.
+     */
+    private static class ParseError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final List<Token> tokens;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private int current = 0;
+    private int nesting = 0;
+    private int height = 0;     // the height of the tree the last rule returned
+    private final Expr.Interner interner;   // null unless nodes are shared
+    private final Set<Expr> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int nodes = 0;      // the number of nodes built, shared ones once per use
+
+    Parser(List<Token> tokens) {
+        this(tokens, false);
+    }
+
+    /**
+     * @param tokens The tokens to parse, terminated by an EOF token
+     * @param share  true to build structurally equal subtrees only once
+     */
+    Parser(List<Token> tokens, boolean share) {
+        this.tokens = tokens;
+        this.interner = share ? new Expr.Interner() : null;
+    }
+
+    /**
+     * Parses the tokens as one expression which must span all of them.
+     * 
+     * @return The syntax tree, or null if the tokens are not a valid expression
+     */
+    Expr parse() {
+        try {
+            Expr expr = expression();
+            if (!isAtEnd())
+                throw error(peek(), "Expect end of expression.");
+            return expr;
+        } catch (ParseError error) {
+            return null;
+        }
+    }
+
+    /**
+     * @return This object's list of diagnostics, in source order
+     */
+    List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return The number of nodes in the tree, counting a shared node once
+     *         for every place it is used
+     */
+    int nodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @return The number of distinct node objects in the tree
+     */
+    int distinctNodes() {
+        return interner == null ? nodes : interner.size();
+    }
+
+    /**
+     * @return The Binary, Grouping and Unary nodes used more than once in the
+     *         tree, compared by identity; empty unless nodes are shared
+     */
+    Set<Expr> sharedNodes() {
+        return shared;
+    }
+
+    private Expr expression() {
+        return or();
+    }
+
+    private Expr or() {
+        Expr expr = and();
+
+        while (match(OR)) {
+            Token operator = previous();
+            int left = height;
+            Expr right = and();
+            expr = binaryNode(expr, operator, right, left);
+        }
+
+        return expr;
+    }
+
+    private Expr and() {
+        Expr expr = equality();
+
+        while (match(AND)) {
+            Token operator = previous();
+            int left = height;
+            Expr right = equality();
+            expr = binaryNode(expr, operator, right, left);
+        }
+
+        return expr;
+    }
+
+    private Expr equality() {
+        Expr expr = comparison();
+
+        while (match(BANG_EQUAL, EQUAL_EQUAL)) {
+            Token operator = previous();
+            int left = height;
+            Expr right = comparison();
+            expr = binaryNode(expr, operator, right, left);
+        }
+
+        return expr;
+    }
+
+    private Expr comparison() {
+        Expr expr = term();
+
+        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
+            Token operator = previous();
+            int left = height;
+            Expr right = term();
+            expr = binaryNode(expr, operator, right, left);
+        }
+
+        return expr;
+    }
+
+    private Expr term() {
+        Expr expr = factor();
+
+        while (match(MINUS, PLUS)) {
+            Token operator = previous();
+            int left = height;
+            Expr right = factor();
+            expr = binaryNode(expr, operator, right, left);
+        }
+
+        return expr;
+    }
+
+    private Expr factor() {
+        Expr expr = unary();
+
+        while (match(SLASH, STAR)) {
+            Token operator = previous();
+            int left = height;
+            Expr right = unary();
+            expr = binaryNode(expr, operator, right, left);
+        }
+
+        return expr;
+    }
+
+    private Expr unary() {
+        if (match(BANG, MINUS)) {
+            Token operator = previous();
+            enter(operator);
+            Expr right = unary();
+            nesting--;
+            grow(operator, height);
+            return unaryNode(operator, right);
+        }
+
+        return primary();
+    }
+
+    private Expr primary() {
+        // every leaf is a tree of height 1
+        height = 1;
+        if (match(FALSE)) return literalNode(false);
+        if (match(TRUE)) return literalNode(true);
+        if (match(NIL)) return literalNode(null);
+
+        if (match(NUMBER, STRING)) {
+            return literalNode(previous().literal);
+        }
+
+        if (match(IDENTIFIER)) {
+            return variableNode(previous());
+        }
+
+        if (match(LEFT_PAREN)) {
+            Token paren = previous();
+            enter(paren);
+            Expr expr = expression();
+            consume(RIGHT_PAREN, "Expect ')' after expression.");
+            nesting--;
+            grow(paren, height);
+            return groupingNode(expr);
+        }
+
+        throw error(peek(), "Expect expression.");
+    }
+
+    /**
+     * Builds a Binary node over operands of the given heights.
+     */
+    private Expr binaryNode(Expr left, Token operator, Expr right, int leftHeight) {
+        grow(operator, Math.max(leftHeight, height));
+        nodes++;
+        if (interner == null) return new Expr.Binary(left, operator, right);
+
+        int distinct = interner.size();
+        return composite(Expr.Binary.of(interner, left, operator, right), distinct);
+    }
+
+    private Expr unaryNode(Token operator, Expr right) {
+        nodes++;
+        if (interner == null) return new Expr.Unary(operator, right);
+
+        int distinct = interner.size();
+        return composite(Expr.Unary.of(interner, operator, right), distinct);
+    }
+
+    private Expr groupingNode(Expr expression) {
+        nodes++;
+        if (interner == null) return new Expr.Grouping(expression);
+
+        int distinct = interner.size();
+        return composite(Expr.Grouping.of(interner, expression), distinct);
+    }
+
+    private Expr literalNode(Object value) {
+        nodes++;
+        if (interner == null) return new Expr.Literal(value);
+        return Expr.Literal.of(interner, value);
+    }
+
+    private Expr variableNode(Token name) {
+        nodes++;
+        if (interner == null) return new Expr.Variable(name);
+        return Expr.Variable.of(interner, name);
+    }
+
+    /**
+     * Notes a composite node as shared when interning it added nothing to
+     * the table, that is when an equal node had been built before.
+     */
+    private Expr composite(Expr node, int distinctBefore) {
+        if (interner.size() == distinctBefore)
+            shared.add(node);
+        return node;
+    }
+
+    /**
+     * Sets the height of the node about to be built over children of the
+     * given height, rejecting trees taller than MAX_DEPTH.
+     */
+    private void grow(Token token, int children) {
+        height = children + 1;
+        if (height > MAX_DEPTH)
+            throw error(token, "Expression nested too deeply.");
+    }
+
+    /**
+     * Counts one more level of nesting at the given token.
+     */
+    private void enter(Token token) {
+        if (++nesting > MAX_NESTING)
+            throw error(token, "Expression nested too deeply.");
+    }
+
+    private boolean match(TokenType... types) {
+        for (TokenType type : types) {
+            if (check(type)) {
+                advance();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Token consume(TokenType type, String message) {
+        if (check(type)) return advance();
+
+        throw error(peek(), message);
+    }
+
+    private boolean check(TokenType type) {
+        if (isAtEnd()) return false;
+        return peek().type == type;
+    }
+
+    private Token advance() {
+        if (!isAtEnd()) current++;
+        return previous();
+    }
+
+    private boolean isAtEnd() {
+        return peek().type == EOF;
+    }
+
+    private Token peek() {
+        return tokens.get(current);
+    }
+
+    private Token previous() {
+        return tokens.get(current - 1);
+    }
+
+    /**
+     * Records an error at the given token and returns the exception that
+     * unwinds the parser.
+     */
+    private ParseError error(Token token, String message) {
+        diagnostics.add(new Diagnostic(token.offset, message));
+        return new ParseError();
+    }
+}
@@ -0,0 +1,31 @@
+package com.bleumuse.lunar;
+
+
+/**
+ * Raised when an expression cannot be evaluated, such as an operator applied
+ * to operands of the wrong type. Carries the token where the error happened.
+ */
+public class RuntimeError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    final Token token;  // the token the error is reported at
+
+
+    /**
+     * Constructs a new RuntimeError at the given token
+     * @param token The token the error is reported at
+     * @param message The description of the error
+     */
+    public RuntimeError(Token token, String message) {
+        super(message);
+        this.token = token;
+    }
+
+
+    /**
+     * @return The token the error is reported at
+     */
+    public Token token() {
+        return token;
+    }
+}
@@ -1,46 +1,69 @@
 package com.bleumuse.lunar;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 // nice
 import static com.bleumuse.lunar.TokenType.*;
 
 public class Scanner {
 
-    private static final Map<String, TokenType> keywords;
-
-    // initialize the keywords map with reserved keywords as strings and corresponding TokenType values
-    static { // executed before any instance of the Scanner class is created, initialization is done once
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
-    }
+    // numbers with at most this many digits are parsed without parseDouble()
+    private static final int MAX_FAST_DIGITS = 15;
+    // every power of ten up to 10^15 is exactly representable as a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7,
+        1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+    };
 
-    private final String source;
+    private final CharSequence source;
+    private final int end;          // scanning never reads at or past this index
+    private final boolean more;     // whether the source continues past end
     private final List<Token> tokens = new ArrayList<>();
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
     private int start = 0;
     private int current = 0;
-    private int line = 1;
+    private boolean truncated = false;
+    private TokenBuffer buffer = null;  // when set, tokens are packed here instead
+    private long base = 0;              // added to the offsets of packed tokens and diagnostics
+    private int maxDiagnostics = Integer.MAX_VALUE;
+    private long errors = 0;            // including those past maxDiagnostics
     
-    Scanner(String source) {
+    Scanner(CharSequence source) {
+        this(source, 0, source.length());
+    }
+
+    /**
+     * Constructs a Scanner over the range [from, to) of the source. Offsets of
+     * the tokens produced stay relative to the whole source. A string or
+     * block-comment still open when the range ends before the source does is
+     * not an error: scanning stops at its start, see scanUntil().
+     * 
+     * @param source The raw source code
+     * @param from   The index of the first character to scan
+     * @param to     The index one past the last character to scan
+     */
+    Scanner(CharSequence source, int from, int to) {
+        this(source, from, to, to < source.length());
+    }
+
+    /**
+     * Constructs a Scanner over the range [from, to) of the source, saying
+     * explicitly whether more input follows the range. Use it when the source
+     * is itself only a part of the input, such as one window of a file: there
+     * a range ending with the source may still be followed by more input.
+     * 
+     * @param source The raw source code
+     * @param from   The index of the first character to scan
+     * @param to     The index one past the last character to scan
+     * @param more   true if the input continues after the range, so that a
+     *               string or block-comment still open at its end is not an error
+     */
+    Scanner(CharSequence source, int from, int to, boolean more) {
         this.source = source;
+        this.current = from;
+        this.end = to;
+        this.more = more;
     }
 
     /**
@@ -50,21 +73,91 @@ public class Scanner {
      * @return This object's list of tokens
      */
     public List<Token> scanTokens() {
-        while (!isAtEnd()) {
+        scanUntil(end);
+
+        // appends one final EOF token once all tokens have been read
+        this.tokens.add(new Token(EOF, source, current, 0, null));
+        return this.tokens;
+    }
+
+    /**
+     * Scans the whole range like scanUntil(), but packs every token into the
+     * given buffer instead of building a Token object for it. Together with a
+     * MappedSource this scans a window of a file without keeping either the
+     * source or the tokens on the heap. No EOF token is added, the caller
+     * adds one after the last window.
+     * 
+     * @param buffer The buffer to append the tokens to
+     * @param base   The offset of this scanner's source within the whole file,
+     *               added to the offsets of the tokens and diagnostics
+     * @return The index where scanning stopped, see scanUntil()
+     */
+    int scanInto(TokenBuffer buffer, long base) {
+        this.buffer = buffer;
+        this.base = base;
+        return scanUntil(end);
+    }
+
+    /**
+     * Scans lexemes until one ends at or past the given limit, or until the end
+     * of the range is reached. No EOF token is added. A lexeme may run past the
+     * limit, so the returned offset can be greater than it.
+     * 
+     * @param limit The index at which no further lexeme is started
+     * @return The index where scanning stopped, which is the start of the
+     *         unfinished lexeme if the range ended inside a string or comment
+     */
+    int scanUntil(int limit) {
+        while (current < limit && !isAtEnd()) {
             // We are at the beginning of the next lexeme
             start = current; // start is updated to the index of the last character of the previous lexeme
             scanToken();
+            if (truncated)
+                return start;
         }
+        return current;
+    }
 
-        // appends one final EOF token once all tokens have been read
-        this.tokens.add(new Token(EOF, "", null, line));
+    /**
+     * @return This object's list of tokens scanned so far
+     */
+    List<Token> tokens() {
         return this.tokens;
     }
 
+    /**
+     * Returns the errors found while scanning. The scanner only collects them,
+     * it is up to the caller to report them, so that several scanners may run
+     * at once without sharing any state.
+     * 
+     * @return This object's list of diagnostics, in source order
+     */
+    public List<Diagnostic> diagnostics() {
+        return this.diagnostics;
+    }
+
+    /**
+     * Keeps at most the given number of diagnostics. Errors past it are still
+     * counted by errorCount() but not recorded, so that a source made of
+     * errors does not fill the heap with them.
+     * 
+     * @param max The largest number of diagnostics to keep
+     */
+    void limitDiagnostics(int max) {
+        this.maxDiagnostics = max;
+    }
+
+    /**
+     * @return The number of errors found, including those not kept
+     */
+    long errorCount() {
+        return errors;
+    }
+
     /**
      * Scans for single characters and adds its corresponding token type to this
      * object's tokens list.
-     * Prints an error message if an unrecognized character is detected in the
+     * Records an error if an unrecognized character is detected in the
      * stream. The erroneous
      * character is still consumed by advance() in this case and moves along to the
      * next character.
@@ -126,12 +219,7 @@ public class Scanner {
                 // this matches a block-comment, no token to add
                 } else if (match('*')) { 
                     // entering block-comment handling logic 
-                    while (peek() != '*' && peekNext() != '/' && !isAtEnd()) // one and two-character lookahead
-                        // advance twice for the two characters examined
-                        advance();
-                        advance();
-                    // advance past the final slash '/' 
-                    advance();
+                    blockComment();
                 // current is updated to point to the first character following the comment
                 } else {
                     // it is the division operator
@@ -142,12 +230,9 @@ public class Scanner {
             case ' ': // ignore
             case '\r': // ignore
             case '\t': // ignore
+            case '\n': // ignore, lines are resolved from offsets on demand
                 // Ignore whitespace
                 break;
-
-            case '\n':
-                line++;
-                break;
             // handle string literals
             case '"':
                 string(); // call the string() helper method
@@ -164,12 +249,33 @@ public class Scanner {
                     identifier();
                 // handle unrecognized characters
                 } else {
-                    Lunar.error(line, "Unexpected character.");
+                    error("Unexpected character.");
                 }
                 break;
         }
     }
 
+    /**
+     * Is called once the opening "/*" of a block-comment has been consumed and
+     * skips every character up to and including the closing "*" "/" pair, in a
+     * single pass over the source. A comment left open at EOF is reported as an
+     * error at its opening instead of reading past the end of the source.
+     */
+    private void blockComment() {
+        // two-character lookahead, stop only on the closing pair
+        while (!(peek() == '*' && peekNext() == '/') && !isAtEnd())
+            advance();
+
+        if (isAtEnd()) {
+            unterminated("Unterminated comment.");
+            return;
+        }
+
+        // Consume the closing "*" and "/"
+        advance();
+        advance();
+    }
+
     /**
      * Consumes a sequence of alphanumeric characters from the input source, creating a new
      * token with the type IDENTIFIER and adding it to the token list.
@@ -178,14 +284,66 @@ public class Scanner {
         // while the current character is alphanumeric, consume it and increment the current pointer one position forward
         while (isAlphaNumeric(peek())) advance();
 
-        // store the current lexeme defined by the boundaries of the start and current pointers 
-        String text = source.substring(start, current);
-        // retrieve the corresponding TokenType value of the lexeme if the key exists in the hashmap 'keywords' 
-        TokenType type = keywords.get(text);
-        // set the default TokenType to IDENTIFIER if no match for a reserved keyword was found
-        if (type == null) type = IDENTIFIER;
         // create new Token as one of the reserved keyword TokenTypes or the IDENTIFIER TokenType, does not require a literal value
-        addToken(type);
+        addToken(identifierType());
+    }
+
+    /**
+     * Tells a reserved keyword from a plain identifier by walking a trie of
+     * the keywords, written out as switches on the characters of the lexeme,
+     * so that no String is built for the lookup.
+     * 
+     * @return The TokenType of the keyword spelled by the current lexeme, or
+     *         IDENTIFIER if it is not one
+     */
+    private TokenType identifierType() {
+        switch (source.charAt(start)) {
+            case 'a': return checkKeyword(1, "nd", AND);
+            case 'c': return checkKeyword(1, "lass", CLASS);
+            case 'e': return checkKeyword(1, "lse", ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'a': return checkKeyword(2, "lse", FALSE);
+                        case 'o': return checkKeyword(2, "r", FOR);
+                        case 'u': return checkKeyword(2, "n", FUN);
+                    }
+                }
+                break;
+            case 'i': return checkKeyword(1, "f", IF);
+            case 'n': return checkKeyword(1, "il", NIL);
+            case 'o': return checkKeyword(1, "r", OR);
+            case 'p': return checkKeyword(1, "rint", PRINT);
+            case 'r': return checkKeyword(1, "eturn", RETURN);
+            case 's': return checkKeyword(1, "uper", SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'h': return checkKeyword(2, "is", THIS);
+                        case 'r': return checkKeyword(2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v': return checkKeyword(1, "ar", VAR);
+            case 'w': return checkKeyword(1, "hile", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    /**
+     * @param offset The number of characters of the lexeme already matched
+     * @param rest   The remaining characters of the keyword
+     * @param type   The TokenType of the keyword
+     * @return type if the rest of the lexeme is exactly rest, IDENTIFIER otherwise
+     */
+    private TokenType checkKeyword(int offset, String rest, TokenType type) {
+        if (current - start != offset + rest.length())
+            return IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++) {
+            if (source.charAt(start + offset + i) != rest.charAt(i))
+                return IDENTIFIER;
+        }
+        return type;
     }
 
     /**
@@ -209,40 +367,66 @@ public class Scanner {
                 advance();
         }
 
-        // parses the string literal to a double literal, creates a new NUMBER Token
+        // parses the lexeme to a double literal, creates a new NUMBER Token
         // type using the parsed double literal and appends it to this object's tokens list
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addNumber(numberValue());
+    }
+
+    /**
+     * Parses the number literal of the current lexeme. Up to 15 digits fit a
+     * long exactly, and dividing that by an exact power of ten rounds only
+     * once, which gives the same double as Double.parseDouble() without
+     * building a String. Longer literals are left to parseDouble().
+     * 
+     * @return The value of the current NUMBER lexeme
+     */
+    private double numberValue() {
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (int i = start; i < current; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (++digits > MAX_FAST_DIGITS)
+                return Double.parseDouble(source.subSequence(start, current).toString());
+
+            mantissa = mantissa * 10 + (c - '0');
+            if (fraction) fractionDigits++;
+        }
+        return mantissa / POWERS_OF_TEN[fractionDigits];
     }
 
     /**
      * Is called when the start of a string has been detected and continues to
      * read the characters of the string until a terminating closing quotation is found.
-     * Otherwise an unterminated string will be reported to the console's error stream.
+     * Otherwise an unterminated string is recorded as a diagnostic.
      * Uses the string literal value and creates a new Token as a STRING Token type
      * and appends the newly created Token to this object's tokens field.
      */
     private void string() {
         // continue to peek until a closing quotation is returned, consume all
         // leading characters up to the closing quotation
-        while (peek() != '"' && !isAtEnd()) {
-            // support for multiline strings
-            if (peek() == '\n')
-                line++; // increment the line number count when a newline character is scanned
+        // multiline strings need no special care, lines are derived from offsets
+        while (peek() != '"' && !isAtEnd())
             advance(); // consume the character and move the current pointer forward
-        }
 
-        // print error message to error stream if EOF is reached, indicating that
+        // record an error if EOF is reached, indicating that
         // no more input to read, string is not properly closed with closing quotations
         if (isAtEnd()) {
-            Lunar.error(line, "Unterminated string.");
+            unterminated("Unterminated string.");
             return;
         }
 
         // Consume the closing quotation (")
         advance();
 
-        // Trim the surrounding quotes
-        String value = source.substring(start + 1, current - 1); // stores the string literal
+        // Trim the surrounding quotes, a TokenBuffer only records the bounds of the lexeme
+        String value = buffer != null ? null
+                : source.subSequence(start + 1, current - 1).toString(); // stores the string literal
         // create a new STRING Token using the STRING token type identifier and the string literal 
         // value and add it to this object's tokens list
         addToken(STRING, value); 
@@ -284,7 +468,7 @@ public class Scanner {
      * @return the character two positions forward from the source string, else return '\0'
      */
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
+        if (current + 1 >= end) return '\0';
         return source.charAt(current + 1);
     } 
 
@@ -330,7 +514,7 @@ public class Scanner {
      *         otherwise
      */
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 
     /**
@@ -343,6 +527,30 @@ public class Scanner {
         return source.charAt(current++);
     }
 
+    /**
+     * Records an error at the start of the lexeme currently being scanned.
+     * 
+     * @param message The description of the error
+     */
+    private void error(String message) {
+        if (errors++ < maxDiagnostics)
+            diagnostics.add(new Diagnostic(base + start, message));
+    }
+
+    /**
+     * Handles a string or block-comment left open at the end of the range. At
+     * the end of the input this is an error, otherwise the lexeme continues
+     * past the range and the scan is marked as truncated.
+     * 
+     * @param message The description of the error
+     */
+    private void unterminated(String message) {
+        if (more)
+            truncated = true;
+        else
+            error(message);
+    }
+
     /**
      * Calls the overloaded addToken() method with the passed
      * token type and an additional null argument for the Token object literal field
@@ -356,14 +564,33 @@ public class Scanner {
     /**
      * Constructs a Token Object using the data from the currently
      * examined string of text and adds the constructed Token to this Object's
-     * tokens list.
+     * tokens list, or packs the token into the TokenBuffer if one is in use.
      * 
      * @param type    The type of token produced by the lexer
      * @param literal The Object literal representation of the token produced by the lexer
      */
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        if (buffer != null) {
+            buffer.add(type, base + start, current - start, 0);
+            return;
+        }
+
+        tokens.add(new Token(type, source, start, current - start, literal));
+    }
+
+    /**
+     * Adds a NUMBER token for the current lexeme, packing its value into the
+     * TokenBuffer if one is in use without boxing it first.
+     * 
+     * @param value The value of the number literal
+     */
+    private void addNumber(double value) {
+        if (buffer != null) {
+            buffer.add(NUMBER, base + start, current - start, value);
+            return;
+        }
+
+        tokens.add(new Token(NUMBER, source, start, current - start, value));
     }
 
 }
\ No newline at end of file
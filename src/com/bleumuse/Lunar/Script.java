@@ -0,0 +1,130 @@
+package com.bleumuse.lunar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The compiled form of a Lunar source, produced by LunarEngine.compile().
+ * A Script is immutable once built: its tokens and diagnostics are read-only
+ * copies and its syntax tree is never modified, so a single instance may be
+ * shared freely between threads and evaluated any number of times.
+ * 
+ * A Script compiled with sharing builds every repeated subexpression once.
+ * Evaluating it computes each shared subexpression once per evaluation, and
+ * reuses the value wherever else the subexpression appears.
+ */
+public final class Script {
+    private final String source;
+    private final List<Token> tokens;
+    private final List<Diagnostic> diagnostics;
+    private final Expr expression;
+    private final LineMap lines;
+    private final int nodeCount;
+    private final int distinctNodes;
+    private final Set<Expr> sharedNodes;
+
+
+    /**
+     * Constructs a new Script from the output of a finished scan, parsing the
+     * tokens into a syntax tree unless scanning already failed.
+     * @param source The raw source code the script was compiled from
+     * @param tokens The tokens produced by the scanner
+     * @param diagnostics The errors found while scanning the source
+     * @param share true to build structurally equal subtrees only once
+     */
+    Script(String source, List<Token> tokens, List<Diagnostic> diagnostics, boolean share) {
+        List<Diagnostic> errors = new ArrayList<>(diagnostics);
+        Expr expression = null;
+        int nodeCount = 0;
+        int distinctNodes = 0;
+        Set<Expr> sharedNodes = Collections.emptySet();
+        if (errors.isEmpty()) {
+            Parser parser = new Parser(tokens, share);
+            expression = parser.parse();
+            errors.addAll(parser.diagnostics());
+            nodeCount = parser.nodeCount();
+            distinctNodes = parser.distinctNodes();
+            if (!parser.sharedNodes().isEmpty())
+                sharedNodes = Collections.unmodifiableSet(parser.sharedNodes());
+        }
+
+        this.source = source;
+        this.tokens = List.copyOf(tokens);
+        this.diagnostics = List.copyOf(errors);
+        this.expression = expression;
+        this.lines = new LineMap(source);
+        this.nodeCount = nodeCount;
+        this.distinctNodes = distinctNodes;
+        this.sharedNodes = sharedNodes;
+    }
+
+
+    /**
+     * @return The raw source code this script was compiled from
+     */
+    public String source() {
+        return source;
+    }
+
+    /**
+     * @return The read-only list of tokens, terminated by an EOF token
+     */
+    public List<Token> tokens() {
+        return tokens;
+    }
+
+    /**
+     * @return The syntax tree of the script, null if it had errors
+     */
+    public Expr expression() {
+        return expression;
+    }
+
+    /**
+     * @return The number of nodes in the syntax tree, counting a shared node
+     *         once for every place it is used
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return The number of distinct node objects in the syntax tree, equal
+     *         to nodeCount() unless the script was compiled with sharing
+     */
+    public int distinctNodes() {
+        return distinctNodes;
+    }
+
+    /**
+     * @return The composite nodes used more than once in the syntax tree,
+     *         compared by identity
+     */
+    Set<Expr> sharedNodes() {
+        return sharedNodes;
+    }
+
+    /**
+     * @return The read-only list of errors found while compiling
+     */
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return The map resolving token and diagnostic offsets to lines and columns
+     */
+    public LineMap lines() {
+        return lines;
+    }
+
+    /**
+     * @return true if any error was found while compiling, false otherwise
+     */
+    public boolean hadError() {
+        return !diagnostics.isEmpty();
+    }
+}
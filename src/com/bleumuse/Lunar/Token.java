@@ -2,27 +2,77 @@ package com.bleumuse.lunar;
 
 
 /**
- * A class representing a single token in Lunar
+ * A class representing a single token in Lunar. A token does not hold its own
+ * copy of its characters, only where they are in the source; the lexeme is
+ * cut out of the source when it is asked for.
  */
 public class Token {
-    final TokenType type;   // the type representing the token
-    final String lexeme;    // the individual characters which comprises it
-    final Object literal;   // a literal value of the token, if applies
-    final int line;         // the line where the token appears
+    final TokenType type;       // the type representing the token
+    final CharSequence source;  // the source the token was scanned from
+    final int offset;           // the index of the token's first character in the source
+    final int length;           // the number of characters which comprises it
+    final Object literal;       // a literal value of the token, if applies
 
 
     /**
-     * Constructs a new Token object with the given type, lexeme, literal, and line values
+     * Constructs a new Token object with the given type, position, and literal values
      * @param type The type of the token
-     * @param lexeme The actual characters that make up the token
+     * @param source The source code the token was scanned from
+     * @param offset The index of the first character of the token in the source code
+     * @param length The number of characters that make up the token
      * @param literal The literal value of the token
-     * @param line The line number where the token appears in the source code
      */
-    Token(TokenType type, String lexeme, Object literal, int line) {
+    Token(TokenType type, CharSequence source, int offset, int length, Object literal) {
         this.type = type;
-        this.lexeme = lexeme;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
         this.literal = literal;
-        this.line = line;
+    }
+
+
+    /**
+     * @return The actual characters that make up the token
+     */
+    public String lexeme() {
+        return source.subSequence(offset, offset + length).toString();
+    }
+
+    /**
+     * @return The type of the token
+     */
+    public TokenType type() {
+        return type;
+    }
+
+    /**
+     * @return The literal value of the token, null if it has none
+     */
+    public Object literal() {
+        return literal;
+    }
+
+    /**
+     * @return The index of the first character of the token in the source code
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * @return The number of characters that make up the token
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Reads one character of the lexeme without copying it out of the source.
+     * @param index The index of the character within the lexeme
+     * @return The character at that index
+     */
+    public char charAt(int index) {
+        return source.charAt(offset + index);
     }
 
 
@@ -33,6 +83,6 @@ public class Token {
      * @return A String representation of the Token object.
      */
     public String toString() {
-        return type + " " + lexeme + " " + literal;
+        return type + " " + lexeme() + " " + literal;
     }
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package com.bleumuse.lunar;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Stores tokens packed in off-heap memory rather than as Token objects, so
+ * that the garbage collector never has to trace them however many there are.
+ * Each token takes a fixed 24 bytes: its type, the length of its lexeme, the
+ * offset of the lexeme in the source, and the value of a NUMBER literal.
+ * Offsets are longs, so a buffer may describe sources larger than 2 GB. The
+ * lexeme and the line are recovered from the source when needed.
+ * 
+ * Tokens are written into fixed-size blocks of direct memory, so growing the
+ * buffer never copies the tokens already in it. The blocks are freed by
+ * close(), not by the garbage collector. Until then they count against
+ * -XX:MaxDirectMemorySize, which defaults to the maximum heap size: a buffer
+ * of n tokens needs about 24n bytes of it, and raising the flag is the way
+ * to scan sources with more tokens than that allows.
+ */
+final class TokenBuffer implements AutoCloseable {
+    private static final int TOKEN_BYTES = 24;          // type, length, offset, number
+    private static final int BLOCK_SHIFT = 16;
+    private static final int BLOCK_TOKENS = 1 << BLOCK_SHIFT;   // tokens per block
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final List<ByteBuffer> blocks = new ArrayList<>();
+    private long size = 0;
+    private boolean closed = false;
+
+
+    /**
+     * Appends a token to the buffer.
+     * 
+     * @param type   The type of the token
+     * @param offset The index of the first character of the lexeme
+     * @param length The number of characters in the lexeme
+     * @param number The value of a NUMBER literal, 0 for other tokens
+     * @throws IllegalStateException if the buffer was closed
+     */
+    void add(TokenType type, long offset, int length, double number) {
+        if (closed)
+            throw new IllegalStateException("Token buffer is closed.");
+        if ((size & (BLOCK_TOKENS - 1)) == 0)
+            blocks.add(ByteBuffer.allocateDirect(BLOCK_TOKENS * TOKEN_BYTES));
+
+        ByteBuffer block = blocks.get((int) (size >>> BLOCK_SHIFT));
+        int at = position(size);
+        block.putInt(at, type.ordinal());
+        block.putInt(at + 4, length);
+        block.putLong(at + 8, offset);
+        block.putDouble(at + 16, number);
+        size++;
+    }
+
+    /**
+     * @return The number of tokens in the buffer
+     */
+    long size() {
+        return size;
+    }
+
+    TokenType type(long index) {
+        return TYPES[block(index).getInt(position(index))];
+    }
+
+    int length(long index) {
+        return block(index).getInt(position(index) + 4);
+    }
+
+    long offset(long index) {
+        return block(index).getLong(position(index) + 8);
+    }
+
+    double number(long index) {
+        return block(index).getDouble(position(index) + 16);
+    }
+
+    /**
+     * Frees every block of the buffer right away. The buffer is empty
+     * afterwards and no longer accepts tokens.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (ByteBuffer block : blocks)
+            DirectMemory.free(block);
+        blocks.clear();
+        size = 0;
+    }
+
+    private ByteBuffer block(long index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Token " + index + " of " + size + ".");
+        return blocks.get((int) (index >>> BLOCK_SHIFT));
+    }
+
+    private static int position(long index) {
+        return (int) (index & (BLOCK_TOKENS - 1)) * TOKEN_BYTES;
+    }
+}
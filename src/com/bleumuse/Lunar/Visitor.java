@@ -7,9 +7,10 @@ import com.bleumuse.lunar.Expr.*;
  * to perform operations for each of the grammar structures. Additional
  * implementing Visitor subclasses must have its behavior declared here.
  */
-interface Visitor<R> {
+public interface Visitor<R> {
     R visitBinaryExpr(Binary expr);
     R visitGroupingExpr(Grouping expr);
     R visitLiteralExpr(Literal expr);
     R visitUnaryExpr(Unary expr);
+    R visitVariableExpr(Variable expr);
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.bleumuse.lunar.records;
+
+/**
+ * Displays the nesting of a record syntax tree in explicit form, in the
+ * same notation as the visitor-based printer. The node type is selected
+ * with instanceof patterns instead of a double dispatch through accept().
+ */
+public final class AstPrinter {
+    public String print(Expr expr) {
+        if (expr instanceof Expr.Binary binary)
+            return parenthesize(binary.operator().lexeme(),
+                    binary.left(), binary.right());
+        if (expr instanceof Expr.Grouping grouping)
+            return parenthesize("group", grouping.expression());
+        if (expr instanceof Expr.Literal literal)
+            return literal.value() == null ? "nil" : literal.value().toString();
+        if (expr instanceof Expr.Unary unary)
+            return parenthesize(unary.operator().lexeme(), unary.right());
+        if (expr instanceof Expr.Variable variable)
+            return variable.name().lexeme();
+        // Expr is sealed, the checks above cover every permitted type
+        throw new AssertionError(expr);
+    }
+
+    private String parenthesize(String name, Expr... exprs) {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("(").append(name);
+        for (Expr expr : exprs) {
+            builder.append(" ");
+            builder.append(print(expr));
+        }
+        builder.append(")");
+
+        return builder.toString();
+    }
+}
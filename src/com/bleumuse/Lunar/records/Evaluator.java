@@ -0,0 +1,134 @@
+package com.bleumuse.lunar.records;
+
+import com.bleumuse.lunar.RuntimeError;
+import com.bleumuse.lunar.Token;
+
+import java.util.Map;
+
+/**
+ * Evaluates a record syntax tree with the semantics of the visitor-based
+ * Interpreter, selecting the node type with instanceof patterns. It does
+ * not charge a Budget, so it is only meant for trusted expressions.
+ *
+ * Numbers are Doubles, strings are Strings, and nil is null. Only nil and
+ * false are falsey. "and" and "or" short-circuit and return the deciding
+ * operand.
+ */
+public final class Evaluator {
+    private final Map<String, Object> variables;
+
+    /**
+     * @param variables The values Variable expressions refer to by name
+     */
+    public Evaluator(Map<String, Object> variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * @param expr The expression to evaluate
+     * @return The value of the expression
+     * @throws RuntimeError if an operand has the wrong type
+     */
+    public Object evaluate(Expr expr) {
+        if (expr instanceof Expr.Binary binary)
+            return binary(binary);
+        if (expr instanceof Expr.Grouping grouping)
+            return evaluate(grouping.expression());
+        if (expr instanceof Expr.Literal literal)
+            return literal.value();
+        if (expr instanceof Expr.Unary unary)
+            return unary(unary);
+        if (expr instanceof Expr.Variable variable)
+            return variable(variable.name());
+        // Expr is sealed, the checks above cover every permitted type
+        throw new AssertionError(expr);
+    }
+
+    private Object binary(Expr.Binary expr) {
+        Token operator = expr.operator();
+
+        // the logical operators only evaluate the right operand when needed
+        switch (operator.type()) {
+            case AND:
+                Object first = evaluate(expr.left());
+                return isTruthy(first) ? evaluate(expr.right()) : first;
+            case OR:
+                Object either = evaluate(expr.left());
+                return isTruthy(either) ? either : evaluate(expr.right());
+            default:
+                break;
+        }
+
+        Object left = evaluate(expr.left());
+        Object right = evaluate(expr.right());
+
+        switch (operator.type()) {
+            case PLUS:
+                if (left instanceof Double a && right instanceof Double b)
+                    return a + b;
+                if (left instanceof String a && right instanceof String b)
+                    return a + b;
+                throw new RuntimeError(operator,
+                        "Operands must be two numbers or two strings.");
+            case MINUS:
+                return number(operator, left) - number(operator, right);
+            case STAR:
+                return number(operator, left) * number(operator, right);
+            case SLASH:
+                return number(operator, left) / number(operator, right);
+            case GREATER:
+                return number(operator, left) > number(operator, right);
+            case GREATER_EQUAL:
+                return number(operator, left) >= number(operator, right);
+            case LESS:
+                return number(operator, left) < number(operator, right);
+            case LESS_EQUAL:
+                return number(operator, left) <= number(operator, right);
+            case EQUAL_EQUAL:
+                return isEqual(left, right);
+            case BANG_EQUAL:
+                return !isEqual(left, right);
+            default:
+                throw new RuntimeError(operator, "Unknown binary operator.");
+        }
+    }
+
+    private Object unary(Expr.Unary expr) {
+        Object right = evaluate(expr.right());
+
+        switch (expr.operator().type()) {
+            case MINUS:
+                if (!(right instanceof Double value))
+                    throw new RuntimeError(expr.operator(), "Operand must be a number.");
+                return -value;
+            case BANG:
+                return !isTruthy(right);
+            default:
+                throw new RuntimeError(expr.operator(), "Unknown unary operator.");
+        }
+    }
+
+    private Object variable(Token name) {
+        if (!variables.containsKey(name.lexeme()))
+            throw new RuntimeError(name,
+                    "Undefined variable '" + name.lexeme() + "'.");
+        return variables.get(name.lexeme());
+    }
+
+    private static double number(Token operator, Object value) {
+        if (value instanceof Double number)
+            return number;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean bool) return bool;
+        return true;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null) return b == null;
+        return a.equals(b);
+    }
+}
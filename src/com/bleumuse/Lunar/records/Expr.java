@@ -0,0 +1,189 @@
+package com.bleumuse.lunar.records;
+
+import com.bleumuse.lunar.Token;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public sealed interface Expr permits Expr.Binary, Expr.Grouping, Expr.Literal, Expr.Unary, Expr.Variable {
+
+  static final class Interner {
+    private final Map<Expr, Expr> nodes = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <E extends Expr> E intern(E node) {
+      Expr existing = nodes.putIfAbsent(node, node);
+      return existing == null ? node : (E) existing;
+    }
+
+    public int size() {
+      return nodes.size();
+    }
+  }
+
+  static boolean sameToken(Token a, Token b) {
+    if (a == b) return true;
+    if (a.type() != b.type() || a.length() != b.length()) return false;
+    for (int i = 0; i < a.length(); i++) {
+      if (a.charAt(i) != b.charAt(i)) return false;
+    }
+    return Objects.equals(a.literal(), b.literal());
+  }
+
+  static int tokenHash(Token token) {
+    int hash = token.type().ordinal();
+    for (int i = 0; i < token.length(); i++) {
+      hash = 31 * hash + token.charAt(i);
+    }
+    return hash;
+  }
+
+  record Binary(Expr left, Token operator, Expr right, int hash) implements Expr {
+    // the hash is always computed here, whatever is passed in
+    public Binary {
+      hash = Objects.hash(left, tokenHash(operator), right);
+    }
+
+    public Binary(Expr left, Token operator, Expr right) {
+      this(left, operator, right, 0);
+    }
+
+    public static Binary of(Interner interner, Expr left, Token operator, Expr right) {
+      return interner.intern(new Binary(left, operator, right));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Binary)) return false;
+      Binary other = (Binary) o;
+      if (hash != other.hash) return false;
+      return Objects.equals(left, other.left) &&
+          sameToken(operator, other.operator) &&
+          Objects.equals(right, other.right);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  record Grouping(Expr expression, int hash) implements Expr {
+    // the hash is always computed here, whatever is passed in
+    public Grouping {
+      hash = Objects.hash(expression);
+    }
+
+    public Grouping(Expr expression) {
+      this(expression, 0);
+    }
+
+    public static Grouping of(Interner interner, Expr expression) {
+      return interner.intern(new Grouping(expression));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Grouping)) return false;
+      Grouping other = (Grouping) o;
+      if (hash != other.hash) return false;
+      return Objects.equals(expression, other.expression);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  record Literal(Object value, int hash) implements Expr {
+    // the hash is always computed here, whatever is passed in
+    public Literal {
+      hash = Objects.hash(value);
+    }
+
+    public Literal(Object value) {
+      this(value, 0);
+    }
+
+    public static Literal of(Interner interner, Object value) {
+      return interner.intern(new Literal(value));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Literal)) return false;
+      Literal other = (Literal) o;
+      if (hash != other.hash) return false;
+      return Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  record Unary(Token operator, Expr right, int hash) implements Expr {
+    // the hash is always computed here, whatever is passed in
+    public Unary {
+      hash = Objects.hash(tokenHash(operator), right);
+    }
+
+    public Unary(Token operator, Expr right) {
+      this(operator, right, 0);
+    }
+
+    public static Unary of(Interner interner, Token operator, Expr right) {
+      return interner.intern(new Unary(operator, right));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Unary)) return false;
+      Unary other = (Unary) o;
+      if (hash != other.hash) return false;
+      return sameToken(operator, other.operator) &&
+          Objects.equals(right, other.right);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  record Variable(Token name, int hash) implements Expr {
+    // the hash is always computed here, whatever is passed in
+    public Variable {
+      hash = Objects.hash(tokenHash(name));
+    }
+
+    public Variable(Token name) {
+      this(name, 0);
+    }
+
+    public static Variable of(Interner interner, Token name) {
+      return interner.intern(new Variable(name));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Variable)) return false;
+      Variable other = (Variable) o;
+      if (hash != other.hash) return false;
+      return sameToken(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
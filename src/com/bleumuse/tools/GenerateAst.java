@@ -10,23 +10,41 @@ import java.util.List;
  * The tool generates a single output file that contains all of the AST classes.
  */
 public class GenerateAst {
+    /**
+     * How a generated node type keeps its hash.
+     */
+    private enum Hash {
+        LAZY,           // computed on the first call and kept in a field
+        PRECOMPUTED     // computed by the constructor into a record component
+    }
+
     /**
      * The entry point for the tool.
-     * @param args An array containing a single argument: the output directory for the generated file.
+     * @param args An array containing the output directory for the generated file,
+     *             optionally followed by --records to generate a sealed interface
+     *             with record nodes instead of visitable classes.
      */
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.err.println("Usage: generate_ast <output directory>");
+        boolean records = args.length == 2 && args[1].equals("--records");
+        if (args.length != 1 && !records) {
+            System.err.println("Usage: generate_ast <output directory> [--records]");
             System.exit(64);
         }
         String outputDir = args[0];
 
-        // Generate the AST classes for the specified types
-        defineAst(outputDir, "Expr", Arrays.asList(
+        List<String> types = Arrays.asList(
            "Binary   : Expr left, Token operator, Expr right",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
-                "Unary    : Token operator, Expr right"));
+                "Unary    : Token operator, Expr right",
+                "Variable : Token name");
+
+        // Generate the AST classes for the specified types
+        if (records) {
+            defineRecordAst(outputDir, "Expr", types);
+        } else {
+            defineAst(outputDir, "Expr", types);
+        }
     }
 
     /**
@@ -44,14 +62,20 @@ public class GenerateAst {
         // write the package and import statements
         writer.println("package com.bleumuse.lunar;");
         writer.println();
+        writer.println("import java.util.HashMap;");
         writer.println("import java.util.List;");
+        writer.println("import java.util.Map;");
+        writer.println("import java.util.Objects;");
         writer.println();
         // write the abstract base class definition
-        writer.println("abstract class " + baseName + " {");
+        writer.println("public abstract class " + baseName + " {");
 
         //
         defineVisitor(writer, baseName, types);
 
+        // The interner shared by all node types
+        defineIntern(writer, baseName, "  ", "");
+
         // Generate an AST class for each type
         for (String type : types) {
             String className = type.split(":")[0].trim();
@@ -61,7 +85,91 @@ public class GenerateAst {
 
         // The base accept() method
         writer.println();
-        writer.println("  abstract <R> R accept(Visitor<R> visitor);");
+        writer.println("  public abstract <R> R accept(Visitor<R> visitor);");
+
+        writer.println("}");
+        writer.close();
+    }
+
+    /**
+     * Generates the AST as a sealed interface permitting one record per type
+     * and writes the output to a file. Records carry no accept() method:
+     * consumers dispatch with pattern matching on the sealed hierarchy. The
+     * records live in their own package so that they can sit next to the
+     * visitor classes; they read tokens through Token's public accessors, and
+     * get the same Interner and structural equality as the visitor classes.
+     * A record cannot have a field of its own, so each one carries its hash
+     * as a last component, computed by its compact constructor from the
+     * cached hashes of its children: hashing, and therefore interning, never
+     * walks a whole subtree.
+     * @param outputDir The directory where the output file should be written.
+     * @param baseName The base name for the generated interface.
+     * @param types A list of strings, where each string represents a type and its fields.
+     */
+    private static void defineRecordAst(
+            String outputDir, String baseName, List<String> types)
+            throws IOException {
+        String path = outputDir + "/" + baseName + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        // write the package and import statements
+        writer.println("package com.bleumuse.lunar.records;");
+        writer.println();
+        writer.println("import com.bleumuse.lunar.Token;");
+        writer.println();
+        writer.println("import java.util.HashMap;");
+        writer.println("import java.util.Map;");
+        writer.println("import java.util.Objects;");
+        writer.println();
+
+        // write the sealed interface definition, permitting every node type
+        StringBuilder permits = new StringBuilder();
+        for (String type : types) {
+            if (permits.length() > 0) permits.append(", ");
+            permits.append(baseName + "." + type.split(":")[0].trim());
+        }
+        writer.println("public sealed interface " + baseName + " permits " +
+                permits + " {");
+
+        // The interner shared by all node types
+        defineIntern(writer, baseName, "  ", "public ");
+
+        // Generate a record for each type
+        for (String type : types) {
+            String className = type.split(":")[0].trim();
+            String fieldList = type.split(":")[1].trim();
+            String[] fields = fieldList.split(", ");
+            String[] names = new String[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                names[i] = fields[i].split(" ")[1];
+            }
+
+            String[] hashed = new String[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                boolean token = fields[i].split(" ")[0].equals("Token");
+                hashed[i] = token ? "tokenHash(" + names[i] + ")" : names[i];
+            }
+
+            writer.println();
+            writer.println("  record " + className + "(" + fieldList +
+                    ", int hash) implements " + baseName + " {");
+            writer.println("    // the hash is always computed here, whatever is passed in");
+            writer.println("    public " + className + " {");
+            writer.println("      hash = Objects.hash(" + String.join(", ", hashed) + ");");
+            writer.println("    }");
+            writer.println();
+            writer.println("    public " + className + "(" + fieldList + ") {");
+            writer.println("      this(" + String.join(", ", names) + ", 0);");
+            writer.println("    }");
+            writer.println();
+            writer.println("    public static " + className +
+                    " of(Interner interner, " + fieldList + ") {");
+            writer.println("      return interner.intern(new " + className + "(" +
+                    String.join(", ", names) + "));");
+            writer.println("    }");
+            defineEquality(writer, className, fields, Hash.PRECOMPUTED);
+            writer.println("  }");
+        }
 
         writer.println("}");
         writer.close();
@@ -78,7 +186,7 @@ public class GenerateAst {
      */
     private static void defineVisitor(
             PrintWriter writer, String baseName, List<String> types) {
-        writer.println("  interface Visitor<R> {");
+        writer.println("  public interface Visitor<R> {");
 
         for (String type : types) {
             String typeName = type.split(":")[0].trim();
@@ -89,6 +197,108 @@ public class GenerateAst {
         writer.println("  }");
     }
 
+    /**
+     * Defines the Interner class and the token comparison helpers used by the
+     * generated equals() and hashCode(). Nodes compare structurally, so passing
+     * every new node through an Interner builds each distinct subtree once and
+     * shares it afterwards. An Interner is owned by a single compilation, which
+     * keeps concurrent compilations from contending on one table. Tokens are
+     * compared by their characters, not their position, so a shared node keeps
+     * the tokens of its first occurrence.
+     *
+     * @param writer   the PrintWriter object to write the definitions to
+     * @param baseName the base name for the generated classes
+     * @param indent   the indentation of members of the base type
+     * @param access   the access modifier of the interner's methods, with
+     *                 a trailing space, or an empty string
+     */
+    private static void defineIntern(PrintWriter writer, String baseName,
+            String indent, String access) {
+        writer.println();
+        writer.println(indent + "static final class Interner {");
+        writer.println(indent + "  private final Map<" + baseName + ", " +
+                baseName + "> nodes = new HashMap<>();");
+        writer.println();
+        writer.println(indent + "  @SuppressWarnings(\"unchecked\")");
+        writer.println(indent + "  " + access + "<E extends " + baseName +
+                "> E intern(E node) {");
+        writer.println(indent + "    " + baseName +
+                " existing = nodes.putIfAbsent(node, node);");
+        writer.println(indent + "    return existing == null ? node : (E) existing;");
+        writer.println(indent + "  }");
+        writer.println();
+        writer.println(indent + "  " + access + "int size() {");
+        writer.println(indent + "    return nodes.size();");
+        writer.println(indent + "  }");
+        writer.println(indent + "}");
+
+        writer.println();
+        writer.println(indent + "static boolean sameToken(Token a, Token b) {");
+        writer.println(indent + "  if (a == b) return true;");
+        writer.println(indent + "  if (a.type() != b.type() || a.length() != b.length()) return false;");
+        writer.println(indent + "  for (int i = 0; i < a.length(); i++) {");
+        writer.println(indent + "    if (a.charAt(i) != b.charAt(i)) return false;");
+        writer.println(indent + "  }");
+        writer.println(indent + "  return Objects.equals(a.literal(), b.literal());");
+        writer.println(indent + "}");
+        writer.println();
+        writer.println(indent + "static int tokenHash(Token token) {");
+        writer.println(indent + "  int hash = token.type().ordinal();");
+        writer.println(indent + "  for (int i = 0; i < token.length(); i++) {");
+        writer.println(indent + "    hash = 31 * hash + token.charAt(i);");
+        writer.println(indent + "  }");
+        writer.println(indent + "  return hash;");
+        writer.println(indent + "}");
+    }
+
+    /**
+     * Writes the structural equals() and the hashCode() of a node type. Token
+     * fields go through sameToken() and tokenHash(), other fields through
+     * Objects.equals() and their own hashCode().
+     *
+     * @param writer    the PrintWriter object to write the methods to
+     * @param className the name of the node type
+     * @param fields    the field declarations of the node type
+     * @param hash      how the node type keeps its hash, in a field or a
+     *                  record component named hash
+     */
+    private static void defineEquality(PrintWriter writer, String className,
+            String[] fields, Hash hash) {
+        StringBuilder same = new StringBuilder();
+        StringBuilder hashed = new StringBuilder();
+        for (String field : fields) {
+            boolean token = field.split(" ")[0].equals("Token");
+            String name = field.split(" ")[1];
+            if (same.length() > 0) {
+                same.append(" &&\n          ");
+                hashed.append(", ");
+            }
+            same.append(token ? "sameToken(" + name + ", other." + name + ")"
+                              : "Objects.equals(" + name + ", other." + name + ")");
+            hashed.append(token ? "tokenHash(" + name + ")" : name);
+        }
+
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    public boolean equals(Object o) {");
+        writer.println("      if (this == o) return true;");
+        writer.println("      if (!(o instanceof " + className +
+                ")) return false;");
+        writer.println("      " + className + " other = (" + className +
+                ") o;");
+        if (hash == Hash.PRECOMPUTED)
+            writer.println("      if (hash != other.hash) return false;");
+        writer.println("      return " + same + ";");
+        writer.println("    }");
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    public int hashCode() {");
+        if (hash == Hash.LAZY)
+            writer.println("      if (hash == 0) hash = Objects.hash(" + hashed + ");");
+        writer.println("      return hash;");
+        writer.println("    }");
+    }
+
     /**
      * Generates the code for an AST class and writes it to the output file.
      * 
@@ -102,7 +312,7 @@ public class GenerateAst {
             PrintWriter writer, String baseName,
             String className, String fieldList) {
         // Write the class definition
-        writer.println("  static class " + className + " extends " +
+        writer.println("  public static class " + className + " extends " +
                 baseName + " {");
 
         // Write the constructor
@@ -117,10 +327,26 @@ public class GenerateAst {
 
         writer.println("    }");
 
+        // Write the interning factory
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            names[i] = fields[i].split(" ")[1];
+        }
+        String args = String.join(", ", names);
+        writer.println();
+        writer.println("    static " + className + " of(Interner interner, " +
+                fieldList + ") {");
+        writer.println("      return interner.intern(new " + className + "(" +
+                args + "));");
+        writer.println("    }");
+
+        // Structural equality, the hash is cached since nodes never change
+        defineEquality(writer, className, fields, Hash.LAZY);
+
         // Visitor pattern.
         writer.println();
         writer.println("    @Override");
-        writer.println("    <R> R accept(Visitor<R> visitor) {");
+        writer.println("    public <R> R accept(Visitor<R> visitor) {");
         writer.println("      return visitor.visit" +
                 className + baseName + "(this);");
         writer.println("    }");
@@ -128,8 +354,9 @@ public class GenerateAst {
         // Write the field definitions
         writer.println();
         for (String field : fields) {
-            writer.println("    final " + field + ";");
+            writer.println("    public final " + field + ";");
         }
+        writer.println("    private int hash;");
 
         writer.println("  }");
     }
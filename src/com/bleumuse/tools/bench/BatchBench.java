@@ -0,0 +1,105 @@
+package com.bleumuse.tools.bench;
+
+import com.bleumuse.lunar.BatchEvaluator;
+import com.bleumuse.lunar.Budget;
+import com.bleumuse.lunar.LunarEngine;
+import com.bleumuse.lunar.Script;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Evaluates one filter over the same random rows with BatchEvaluator and
+ * with the Interpreter, row by row, checks that both agree on every row and
+ * reports the rows per second of each. The Interpreter runs once without a
+ * budget, through evalTrusted(), and once charging Budget.UNLIMITED, which
+ * is the cost every eval() pays. Its variables live in one map that is
+ * refilled for every row, so that only the evaluation is measured.
+ *
+ * Usage: java com.bleumuse.tools.bench.BatchBench [rows] [runs]
+ *
+ * Exits with status 1 when the two disagree on any row.
+ */
+public final class BatchBench {
+    private static final String FILTER =
+            "price * qty > 40 and (region == 5 or (score - 50) / 10 >= 1) and !(age < 18)";
+    private static final String[] COLUMNS = { "price", "qty", "region", "score", "age" };
+
+    private BatchBench() {}
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Random random = new Random(42);
+        double[][] columns = new double[COLUMNS.length][rows];
+        for (int row = 0; row < rows; row++) {
+            columns[0][row] = random.nextInt(2000) / 100.0;
+            columns[1][row] = random.nextInt(10);
+            columns[2][row] = random.nextInt(10);
+            columns[3][row] = random.nextInt(100);
+            columns[4][row] = random.nextInt(80);
+        }
+
+        LunarEngine engine = new LunarEngine();
+        Script script = engine.compile(FILTER);
+        BatchEvaluator batch = BatchEvaluator.compile(script, COLUMNS);
+        Map<String, Object> variables = new HashMap<>();
+
+        boolean[] expected = batch.evaluateBooleans(rows, columns);
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+        int mismatches = 0;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            boolean[] result = batch.evaluateBooleans(rows, columns);
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+            mismatches += rows - count(expected, result);
+
+            start = System.nanoTime();
+            result = new boolean[rows];
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < COLUMNS.length; column++)
+                    variables.put(COLUMNS[column], columns[column][row]);
+                result[row] = Boolean.TRUE.equals(engine.evalTrusted(script, variables));
+            }
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+            mismatches += rows - count(expected, result);
+
+            start = System.nanoTime();
+            result = new boolean[rows];
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < COLUMNS.length; column++)
+                    variables.put(COLUMNS[column], columns[column][row]);
+                result[row] = Boolean.TRUE.equals(engine.eval(script, variables, Budget.UNLIMITED));
+            }
+            best[2] = Math.min(best[2], System.nanoTime() - start);
+            mismatches += rows - count(expected, result);
+        }
+
+        int selected = 0;
+        for (boolean b : expected)
+            if (b) selected++;
+        System.out.printf("%d rows, %d selected%n", rows, selected);
+        report("BatchEvaluator", rows, best[0], best[0]);
+        report("Interpreter, trusted", rows, best[1], best[0]);
+        report("Interpreter, budget", rows, best[2], best[0]);
+
+        System.out.println(mismatches == 0 ? "PASSED" : "FAILED: " + mismatches + " rows differ");
+        if (mismatches != 0)
+            System.exit(1);
+    }
+
+    // the number of rows on which both results agree
+    private static int count(boolean[] expected, boolean[] actual) {
+        int same = 0;
+        for (int i = 0; i < expected.length; i++)
+            if (expected[i] == actual[i]) same++;
+        return same;
+    }
+
+    private static void report(String name, int rows, long nanos, long batchNanos) {
+        System.out.printf("%-22s %8.1f ms  %12.0f rows/s  %6.1fx%n", name, nanos / 1e6,
+                rows / (nanos / 1e9), (double) nanos / batchNanos);
+    }
+}
@@ -0,0 +1,183 @@
+package com.bleumuse.tools.bench;
+
+import com.bleumuse.lunar.Expr;
+import com.bleumuse.lunar.LunarEngine;
+import com.bleumuse.lunar.Script;
+import com.bleumuse.lunar.Visitor;
+import com.bleumuse.lunar.records.Evaluator;
+
+import java.util.Map;
+
+/**
+ * Times the visitor-based syntax tree against the sealed record one built by
+ * GenerateAst --records. The class tree is compiled from a balanced, fully
+ * parenthesised expression and the record tree is a copy of it, so both have
+ * the same shape. Each is walked by a node counter and by an evaluator:
+ * through accept() for the classes, and through instanceof patterns for the
+ * records.
+ *
+ * Both counters add to an int field and return nothing, so neither boxes.
+ * The Interpreter runs through LunarEngine.evalTrusted(), which charges
+ * nothing to a budget, like the record Evaluator. What remains between the
+ * two columns is the dispatch.
+ *
+ * Usage: java com.bleumuse.tools.bench.DispatchBenchmark [depth] [rounds]
+ */
+public final class DispatchBenchmark {
+    private static final char[] OPERATORS = { '+', '-', '*' };
+
+    private DispatchBenchmark() {}
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 18;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        LunarEngine engine = new LunarEngine();
+        StringBuilder source = new StringBuilder();
+        balanced(source, depth, 0);
+        Script script = engine.compile(source.toString());
+        if (script.hadError())
+            throw new IllegalStateException(script.diagnostics().get(0).toString());
+
+        Expr classes = script.expression();
+        com.bleumuse.lunar.records.Expr records = classes.accept(new Converter());
+        Map<String, Object> variables = Map.of("x", 2.0);
+        Evaluator evaluator = new Evaluator(variables);
+
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+        Object[] results = new Object[4];
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            Counter counter = new Counter();
+            classes.accept(counter);
+            results[0] = counter.count;
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            RecordCounter recordCounter = new RecordCounter();
+            recordCounter.count(records);
+            results[1] = recordCounter.count;
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            results[2] = engine.evalTrusted(script, variables);
+            best[2] = Math.min(best[2], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            results[3] = evaluator.evaluate(records);
+            best[3] = Math.min(best[3], System.nanoTime() - start);
+        }
+
+        if (!results[0].equals(results[1]) || !results[2].equals(results[3]))
+            throw new AssertionError("the trees disagree");
+        System.out.println("nodes: " + results[0]);
+        report("count, visitor", best[0]);
+        report("count, instanceof", best[1]);
+        report("eval, Interpreter", best[2]);
+        report("eval, Evaluator", best[3]);
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.printf("%-20s %8.3f ms%n", name, nanos / 1e6);
+    }
+
+    // a complete binary tree whose leaves alternate between 1 and x, every
+    // operation in parentheses so that precedence does not reshape it
+    private static void balanced(StringBuilder out, int depth, int index) {
+        if (depth == 0) {
+            out.append(index % 2 == 0 ? "1" : "x");
+            return;
+        }
+        out.append('(');
+        balanced(out, depth - 1, index * 2);
+        out.append(OPERATORS[depth % OPERATORS.length]);
+        balanced(out, depth - 1, index * 2 + 1);
+        out.append(')');
+    }
+
+    // counts the nodes of a class tree through double dispatch
+    private static final class Counter implements Visitor<Void> {
+        int count;
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            count++;
+            expr.left.accept(this);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            count++;
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            count++;
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            count++;
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            count++;
+            return null;
+        }
+    }
+
+    // counts the nodes of a record tree through instanceof patterns
+    private static final class RecordCounter {
+        int count;
+
+        void count(com.bleumuse.lunar.records.Expr expr) {
+            count++;
+            if (expr instanceof com.bleumuse.lunar.records.Expr.Binary binary) {
+                count(binary.left());
+                count(binary.right());
+            } else if (expr instanceof com.bleumuse.lunar.records.Expr.Grouping grouping) {
+                count(grouping.expression());
+            } else if (expr instanceof com.bleumuse.lunar.records.Expr.Unary unary) {
+                count(unary.right());
+            }
+        }
+    }
+
+    // copies a class tree into records, node for node
+    private static final class Converter implements Visitor<com.bleumuse.lunar.records.Expr> {
+        @Override
+        public com.bleumuse.lunar.records.Expr visitBinaryExpr(Expr.Binary expr) {
+            return new com.bleumuse.lunar.records.Expr.Binary(
+                    expr.left.accept(this), expr.operator, expr.right.accept(this));
+        }
+
+        @Override
+        public com.bleumuse.lunar.records.Expr visitGroupingExpr(Expr.Grouping expr) {
+            return new com.bleumuse.lunar.records.Expr.Grouping(expr.expression.accept(this));
+        }
+
+        @Override
+        public com.bleumuse.lunar.records.Expr visitLiteralExpr(Expr.Literal expr) {
+            return new com.bleumuse.lunar.records.Expr.Literal(expr.value);
+        }
+
+        @Override
+        public com.bleumuse.lunar.records.Expr visitUnaryExpr(Expr.Unary expr) {
+            return new com.bleumuse.lunar.records.Expr.Unary(
+                    expr.operator, expr.right.accept(this));
+        }
+
+        @Override
+        public com.bleumuse.lunar.records.Expr visitVariableExpr(Expr.Variable expr) {
+            return new com.bleumuse.lunar.records.Expr.Variable(expr.name);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.bleumuse.tools.bench;
+
+import com.bleumuse.lunar.Diagnostic;
+import com.bleumuse.lunar.FileScanner;
+import com.bleumuse.lunar.LunarEngine;
+import com.bleumuse.lunar.Script;
+import com.bleumuse.lunar.Token;
+import com.bleumuse.lunar.TokenType;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks FileScanner against the in-memory Scanner, then compares what the
+ * two cost the garbage collector.
+ *
+ * The check scans small sources through windows of a few bytes, so that
+ * window boundaries fall on newlines, inside strings and inside comments,
+ * and requires exactly the tokens and diagnostics of LunarEngine.compile().
+ * Past the first diagnostics FileScanner keeps, only their count must match.
+ *
+ * The comparison scans one larger file both ways: read into a String and
+ * compiled, which keeps every token as an object in an ArrayList, and
+ * through LunarEngine.scanFile(), which packs them off the heap. For each
+ * it reports the collections during the scan, the heap still in use while
+ * the result is live, and the time a full collection takes then.
+ *
+ * Usage: java com.bleumuse.tools.bench.FileScanBench [megabytes]
+ *
+ * Exits with status 1 when the two scanners disagree.
+ */
+public final class FileScanBench {
+    // every fragment ends a line, so that no line is longer than the windows
+    private static final String[] FRAGMENTS = {
+        "price * qty > 40 and region == 5\n",
+        "\"a string\nthat spans\nthree lines\" + name\n",
+        "/* a block comment\n   over two lines */ x\n",
+        "// a line comment with \"quotes\" and /* openers\n",
+        "12.75 / (rate - 0.5) + 3\n",
+        "!(flag or nil) != true\n",
+        "@ # ~\n",
+    };
+
+    private static final LunarEngine ENGINE = new LunarEngine();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private FileScanBench() {}
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        Path file = Files.createTempFile("lunar", ".lun");
+        try {
+            boolean passed = true;
+            // a first window ending exactly on the newline inside a string or
+            // comment, which the second window must scan again from its start
+            passed &= onNewline(file, "1 + 2 + 3 + 4 + 5\n+ \"aaaa\nbbbb\" + 1\n");
+            passed &= onNewline(file, "1 + 2 + 3 + 4 + 5\n+ /*aa\nbbbb*/ 1\n");
+            passed &= onNewline(file, "1 + 2 + 3 + 4 + 5\n+ \"aaaa\nbbbb\" + 1\n\"open\n");
+            // the same, but the string does not fit in the next window either
+            passed &= rejected(file, "\"aaaaaaaaaaaaaa\nbbbb\" + 1\n", 16);
+            String mixed = source(1 << 16);
+            for (int window : new int[] { 64, 100, 1000, 4096 })
+                passed &= check(file, mixed, window);
+            // more errors than FileScanner keeps
+            passed &= check(file, "@ # ~\n".repeat(2000), 4096);
+
+            Files.writeString(file, source(megabytes << 20), StandardCharsets.ISO_8859_1);
+            compareCosts(file);
+
+            System.out.println(passed ? "PASSED" : "FAILED");
+            if (!passed)
+                System.exit(1);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static String source(int length) {
+        Random random = new Random(42);
+        StringBuilder source = new StringBuilder(length + 64);
+        while (source.length() < length)
+            source.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        return source.toString();
+    }
+
+    // checks the source with a window ending on its second newline
+    private static boolean onNewline(Path file, String source) throws IOException {
+        return check(file, source, source.indexOf('\n', source.indexOf('\n') + 1) + 1);
+    }
+
+    // a lexeme longer than the window must be refused, not misreported
+    private static boolean rejected(Path file, String source, int window) throws IOException {
+        Files.writeString(file, source, StandardCharsets.ISO_8859_1);
+        String outcome;
+        try (FileScanner scanner = FileScanner.scan(file, window)) {
+            outcome = "scanned with " + scanner.errorCount() + " errors, expected an IOException";
+        } catch (IOException e) {
+            outcome = null;
+        }
+        System.out.printf("%6d chars, window %4d  %s%n", source.length(), window,
+                outcome == null ? "ok, rejected" : outcome);
+        return outcome == null;
+    }
+
+    private static boolean check(Path file, String source, int window) throws IOException {
+        Files.writeString(file, source, StandardCharsets.ISO_8859_1);
+        Script expected = ENGINE.compile(source);
+        String mismatch;
+        try (FileScanner actual = FileScanner.scan(file, window)) {
+            mismatch = compare(expected, actual);
+        }
+        System.out.printf("%6d chars, window %4d  %s%n", source.length(), window,
+                mismatch == null ? "ok" : mismatch);
+        return mismatch == null;
+    }
+
+    // the first difference between the two scans, null if none
+    private static String compare(Script expected, FileScanner actual) {
+        List<Token> tokens = expected.tokens();
+        for (int i = 0; i < Math.min(tokens.size(), actual.tokenCount()); i++) {
+            Token token = tokens.get(i);
+            if (token.type() != actual.type(i) || token.offset() != actual.offset(i)
+                    || token.length() != actual.length(i)
+                    || token.type() == TokenType.NUMBER
+                            && (Double) token.literal() != actual.number(i))
+                return "token " + i + ": " + actual.type(i) + " at " + actual.offset(i)
+                        + " instead of " + token;
+        }
+        if (tokens.size() != actual.tokenCount())
+            return actual.tokenCount() + " tokens instead of " + tokens.size();
+
+        List<Diagnostic> errors = expected.diagnostics();
+        List<Diagnostic> kept = actual.diagnostics();
+        if (kept.size() > errors.size())
+            return kept.size() + " diagnostics instead of " + errors.size();
+        for (int i = 0; i < kept.size(); i++) {
+            Diagnostic a = errors.get(i);
+            Diagnostic b = kept.get(i);
+            if (a.offset() != b.offset() || !a.message().equals(b.message()))
+                return "diagnostic " + i + ": " + b + " instead of " + a;
+        }
+        if (actual.errorCount() != errors.size())
+            return actual.errorCount() + " errors instead of " + errors.size();
+        if (kept.size() < errors.size() && kept.size() < 1000)
+            return "only " + kept.size() + " of " + errors.size() + " diagnostics kept";
+        return null;
+    }
+
+    private static void compareCosts(Path file) throws IOException {
+        System.out.printf("%n%d MB file%n", Files.size(file) >> 20);
+        System.out.printf("%-12s %10s %6s %10s %12s %12s%n", "", "tokens", "GCs", "GC time",
+                "live heap", "full GC");
+
+        measure("compile", () -> ENGINE.compile(Files.readString(file,
+                StandardCharsets.ISO_8859_1)), result -> ((Script) result).tokens().size());
+
+        FileScanner[] scanned = new FileScanner[1];
+        measure("scanFile", () -> scanned[0] = ENGINE.scanFile(file),
+                result -> ((FileScanner) result).tokenCount());
+        scanned[0].close();
+    }
+
+    private interface Scan {
+        Object run() throws IOException;
+    }
+
+    private interface Count {
+        long of(Object result);
+    }
+
+    private static void measure(String name, Scan scan, Count count) throws IOException {
+        System.gc();
+        long collections = collections();
+        long collectionMillis = collectionMillis();
+
+        Object result = scan.run();
+        collections = collections() - collections;
+        collectionMillis = collectionMillis() - collectionMillis;
+
+        // the cost of keeping the result reachable across a full collection
+        long start = System.nanoTime();
+        System.gc();
+        long fullGc = System.nanoTime() - start;
+        long live = MEMORY.getHeapMemoryUsage().getUsed();
+
+        System.out.printf("%-12s %10d %6d %7d ms %9.1f MB %9.1f ms%n", name, count.of(result),
+                collections, collectionMillis, live / 1048576.0, fullGc / 1e6);
+    }
+
+    private static long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max(0, gc.getCollectionCount());
+        return total;
+    }
+
+    private static long collectionMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max(0, gc.getCollectionTime());
+        return total;
+    }
+}
@@ -0,0 +1,113 @@
+package com.bleumuse.tools.bench;
+
+import com.bleumuse.lunar.Budget;
+import com.bleumuse.lunar.LunarEngine;
+import com.bleumuse.lunar.Script;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reports how much node sharing compiling with interning achieves on a
+ * corpus of scripts, and what it does to evaluation time. Each script is
+ * compiled twice, once with sharing and once without: the report compares
+ * the nodes of the plain trees with the distinct nodes of the shared ones,
+ * checks that both evaluate to the same value, and times both evaluations.
+ *
+ * Usage: java com.bleumuse.tools.bench.InternReport [script files...]
+ *
+ * Without arguments the corpus is generated: filter rules in the style of
+ * generated sources, each an "or" of clauses drawn from a few templates with
+ * a few thresholds, so that the same subexpressions recur within a script.
+ */
+public final class InternReport {
+    private static final String[] TEMPLATES = {
+        "price * qty > %d",
+        "region == %d",
+        "(score - 50) / 10 >= %d",
+        "age < %d and age > 18",
+        "!(region == %d)",
+    };
+    private static final int[] THRESHOLDS = { 1, 2, 3, 40 };
+
+    private static final Map<String, Object> VARIABLES = Map.of(
+            "price", 12.5, "qty", 4.0, "region", 5.0, "score", 35.0, "age", 30.0);
+
+    private static final LunarEngine ENGINE = new LunarEngine();
+
+    private InternReport() {}
+
+    public static void main(String[] args) throws IOException {
+        List<String> corpus = new ArrayList<>();
+        if (args.length > 0) {
+            for (String arg : args) corpus.add(Files.readString(Path.of(arg)));
+        } else {
+            Random random = new Random(42);
+            for (int i = 0; i < 500; i++) corpus.add(rule(random, 40));
+        }
+
+        long nodes = 0;
+        long distinct = 0;
+        long plainNanos = 0;
+        long sharedNanos = 0;
+        int skipped = 0;
+        for (String source : corpus) {
+            Script plain = ENGINE.compile(source);
+            Script shared = ENGINE.compile(source, true);
+            if (plain.hadError()) {
+                skipped++;
+                continue;
+            }
+            nodes += plain.nodeCount();
+            distinct += shared.distinctNodes();
+
+            // warm up both trees once before timing them
+            Object expected = ENGINE.eval(plain, VARIABLES, Budget.UNLIMITED);
+            Object actual = ENGINE.eval(shared, VARIABLES, Budget.UNLIMITED);
+            if (expected == null ? actual != null : !expected.equals(actual))
+                throw new AssertionError("shared tree evaluates to " + actual +
+                        " instead of " + expected + ": " + source);
+
+            plainNanos += time(plain);
+            sharedNanos += time(shared);
+        }
+
+        System.out.printf("scripts         %d (%d skipped with errors)%n", corpus.size() - skipped, skipped);
+        System.out.printf("nodes           %d%n", nodes);
+        System.out.printf("distinct nodes  %d (%.1f%% of the nodes, %.2fx sharing)%n",
+                distinct, 100.0 * distinct / Math.max(1, nodes), (double) nodes / Math.max(1, distinct));
+        System.out.printf("eval, plain     %.3f ms%n", plainNanos / 1e6);
+        System.out.printf("eval, shared    %.3f ms%n", sharedNanos / 1e6);
+    }
+
+    // the best of a few rounds of evaluations of one script, in nanoseconds
+    private static long time(Script script) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 20; i++) ENGINE.eval(script, VARIABLES, Budget.UNLIMITED);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // a rule of the given number of terms, each the "and" of two clauses
+    private static String rule(Random random, int terms) {
+        StringBuilder rule = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) rule.append(" or ");
+            rule.append('(').append(clause(random)).append(" and ").append(clause(random)).append(')');
+        }
+        return rule.toString();
+    }
+
+    private static String clause(Random random) {
+        String template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+        return String.format(template, THRESHOLDS[random.nextInt(THRESHOLDS.length)]);
+    }
+}
@@ -0,0 +1,112 @@
+package com.bleumuse.tools.bench;
+
+import com.bleumuse.lunar.Diagnostic;
+import com.bleumuse.lunar.LunarEngine;
+import com.bleumuse.lunar.Script;
+import com.bleumuse.lunar.Token;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compiles one large source on ForkJoinPools of several sizes and checks
+ * that every pool gives exactly the tokens and diagnostics of the serial
+ * Scanner, which is what a pool of parallelism 1 runs. The source mixes
+ * strings and block comments spanning several lines, line comments and
+ * unexpected characters, so that chunk boundaries fall inside all of them,
+ * and ends with an unterminated comment.
+ *
+ * Usage: java com.bleumuse.tools.bench.ParallelScanBench [megabytes] [runs] [pool sizes...]
+ *
+ * Exits with status 1 when any pool disagrees with the serial scan.
+ */
+public final class ParallelScanBench {
+    private static final String[] FRAGMENTS = {
+        "price * qty > 40 and region == 5\n",
+        "\"a string\nthat spans\nthree lines\" + name\n",
+        "/* a block comment\n   over two lines */ ",
+        "// a line comment with \"quotes\" and /* openers\n",
+        "12.75 / (rate - 0.5) ",
+        "!(flag or nil) != true ",
+        "@ # ",
+        "\"\" + \"/* not a comment */\"\n",
+    };
+
+    private ParallelScanBench() {}
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int[] sizes = { 1, 2, 4, 8 };
+        if (args.length > 2) {
+            sizes = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++)
+                sizes[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        String source = source(megabytes << 20);
+        Script serial = new LunarEngine(new ForkJoinPool(1)).compile(source);
+        System.out.printf("%d chars, %d tokens, %d diagnostics%n", source.length(),
+                serial.tokens().size(), serial.diagnostics().size());
+
+        boolean passed = true;
+        for (int size : sizes) {
+            ForkJoinPool pool = new ForkJoinPool(size);
+            LunarEngine engine = new LunarEngine(pool);
+            long best = Long.MAX_VALUE;
+            Script script = null;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                script = engine.compile(source);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+
+            String mismatch = compare(serial, script);
+            passed &= mismatch == null;
+            System.out.printf("pool %2d  %8.1f ms  %7.1f MB/s  %s%n", size, best / 1e6,
+                    source.length() / (best / 1e3), mismatch == null ? "ok" : mismatch);
+        }
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed)
+            System.exit(1);
+    }
+
+    private static String source(int length) {
+        Random random = new Random(42);
+        StringBuilder source = new StringBuilder(length + 64);
+        while (source.length() < length)
+            source.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        return source.append("/* never closed\n").toString();
+    }
+
+    // the first difference between the two compilations, null if none
+    private static String compare(Script expected, Script actual) {
+        List<Token> want = expected.tokens();
+        List<Token> got = actual.tokens();
+        for (int i = 0; i < Math.min(want.size(), got.size()); i++) {
+            Token a = want.get(i);
+            Token b = got.get(i);
+            if (a.type() != b.type() || a.offset() != b.offset() || a.length() != b.length()
+                    || !Objects.equals(a.literal(), b.literal()))
+                return "token " + i + ": " + b + " instead of " + a;
+        }
+        if (want.size() != got.size())
+            return got.size() + " tokens instead of " + want.size();
+
+        List<Diagnostic> wantErrors = expected.diagnostics();
+        List<Diagnostic> gotErrors = actual.diagnostics();
+        for (int i = 0; i < Math.min(wantErrors.size(), gotErrors.size()); i++) {
+            Diagnostic a = wantErrors.get(i);
+            Diagnostic b = gotErrors.get(i);
+            if (a.offset() != b.offset() || !a.message().equals(b.message()))
+                return "diagnostic " + i + ": " + b + " instead of " + a;
+        }
+        if (wantErrors.size() != gotErrors.size())
+            return gotErrors.size() + " diagnostics instead of " + wantErrors.size();
+        return null;
+    }
+}
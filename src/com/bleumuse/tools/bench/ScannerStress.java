@@ -0,0 +1,138 @@
+package com.bleumuse.tools.bench;
+
+import com.bleumuse.lunar.LunarEngine;
+import com.bleumuse.lunar.Script;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.IntFunction;
+
+/**
+ * Compiles adversarial sources at two sizes and checks that the time and
+ * memory spent on them grow linearly. Each case is compiled at n and at 4n
+ * characters: a linear front end takes about four times as long on the
+ * larger one, a quadratic one sixteen times. The best of several runs is
+ * kept to shed JIT warm-up noise, and the time spent in garbage collection
+ * is left out: it follows from the allocation, which is bounded separately.
+ *
+ * Usage: java com.bleumuse.tools.bench.ScannerStress [n] [runs]
+ *
+ * Exits with status 1 when any case fails its bounds.
+ */
+public final class ScannerStress {
+    // the largest accepted cost ratio between 4n and n, where 4 is linear
+    private static final double MAX_TIME_RATIO = 10.0;
+    private static final double MAX_ALLOCATION_RATIO = 6.0;
+    // the largest accepted allocation per source character, in bytes
+    private static final double MAX_BYTES_PER_CHAR = 64.0;
+    // the shortest measured run, short cases are compiled repeatedly to fill it
+    private static final long MIN_RUN_NANOS = 10_000_000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final LunarEngine ENGINE = new LunarEngine();
+
+    private ScannerStress() {}
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 16;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        boolean passed = true;
+        passed &= check("unterminated string", size -> "\"" + "a".repeat(size - 1), n, runs);
+        passed &= check("unterminated string, lines",
+                size -> "\"" + "a\n".repeat(size / 2), n, runs);
+        passed &= check("unterminated comment", size -> "/*" + "x".repeat(size - 2), n, runs);
+        passed &= check("nested comment openers", size -> "/*".repeat(size / 2), n, runs);
+        passed &= check("run of /", size -> "/".repeat(size), n, runs);
+        passed &= check("run of \"/ \"", size -> "/ ".repeat(size / 2), n, runs);
+        passed &= check("run of *", size -> "*".repeat(size), n, runs);
+        passed &= check("run of */", size -> "*/".repeat(size / 2), n, runs);
+        passed &= check("deep parentheses", size -> "(".repeat(size), n, runs);
+        passed &= check("balanced parentheses",
+                size -> "(".repeat(size / 2) + ")".repeat(size / 2), n, runs);
+        passed &= check("giant identifier", size -> "a".repeat(size), n, runs);
+        passed &= check("giant number", size -> "1".repeat(size), n, runs);
+        passed &= check("giant fraction", size -> "1." + "5".repeat(size - 2), n, runs);
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed)
+            System.exit(1);
+    }
+
+    /**
+     * Compiles the source of one case at n and 4n characters and reports
+     * whether its cost stayed linear.
+     */
+    private static boolean check(String name, IntFunction<String> source, int n, int runs) {
+        String smallSource = source.apply(n);
+        String largeSource = source.apply(4 * n);
+        // warm up the paths this case takes before timing them
+        measure(smallSource, runs, 1);
+        measure(largeSource, 1, 1);
+
+        // compile both sizes equally often, enough for the small one to be timed
+        int repeat = 1;
+        while (measure(smallSource, 1, repeat).nanos * repeat < MIN_RUN_NANOS)
+            repeat *= 2;
+
+        Cost small = measure(smallSource, runs, repeat);
+        Cost large = measure(largeSource, runs, repeat);
+
+        double timeRatio = (double) large.nanos / Math.max(1, small.nanos);
+        double allocationRatio = (double) large.bytes / Math.max(1, small.bytes);
+        double bytesPerChar = (double) large.bytes / (4.0 * n);
+        boolean passed = timeRatio <= MAX_TIME_RATIO
+                && allocationRatio <= MAX_ALLOCATION_RATIO
+                && bytesPerChar <= MAX_BYTES_PER_CHAR;
+
+        System.out.printf("%-28s %9.3f ms %9.3f ms  time x%-6.2f alloc x%-6.2f %6.1f B/char  %s%n",
+                name, small.nanos / 1e6, large.nanos / 1e6, timeRatio,
+                allocationRatio, bytesPerChar, passed ? "ok" : "FAIL");
+        return passed;
+    }
+
+    // the least time and allocation per compilation seen over the given runs
+    private static Cost measure(String source, int runs, int repeat) {
+        Cost best = new Cost(Long.MAX_VALUE, Long.MAX_VALUE);
+        long thread = Thread.currentThread().getId();
+        for (int run = 0; run < runs; run++) {
+            // start each run on an empty young generation
+            System.gc();
+            long bytes = THREADS.getThreadAllocatedBytes(thread);
+            long collected = collectionMillis();
+            long start = System.nanoTime();
+            for (int i = 0; i < repeat; i++) {
+                Script script = ENGINE.compile(source);
+                if (script.tokens().isEmpty())
+                    throw new AssertionError("no EOF token");
+            }
+            long nanos = System.nanoTime() - start;
+            nanos -= (collectionMillis() - collected) * 1_000_000L;
+            nanos = Math.max(0, nanos) / repeat;
+            bytes = (THREADS.getThreadAllocatedBytes(thread) - bytes) / repeat;
+
+            best = new Cost(Math.min(best.nanos, nanos), Math.min(best.bytes, bytes));
+        }
+        return best;
+    }
+
+    // the total time all collectors have spent so far
+    private static long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, collector.getCollectionTime());
+        return millis;
+    }
+
+    private static final class Cost {
+        final long nanos;
+        final long bytes;
+
+        Cost(long nanos, long bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+    }
+}